@@ -15,3 +15,8 @@
 #-keepclassmembers class fqcn.of.javascript.interface.for.webview {
 #   public *;
 #}
+
+# Implementations generated by retrofit-compiler are looked up by name in Retrofit.create
+-keep class **_RetrofitService {
+    public <init>(retrofit2.Retrofit);
+}
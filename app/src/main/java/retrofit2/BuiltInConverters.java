@@ -15,15 +15,25 @@
  */
 package retrofit2;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
+import okhttp3.MediaType;
 import okhttp3.RequestBody;
 import okhttp3.ResponseBody;
+import okio.BufferedSink;
+import okio.Okio;
+import okio.Source;
 import retrofit2.http.Streaming;
 
 final class BuiltInConverters extends Converter.Factory {
+    private static final MediaType OCTET_STREAM = MediaType.parse("application/octet-stream");
+
     @Override
     public Converter<ResponseBody, ?> responseBodyConverter(Type type, Annotation[] annotations,
                                                             Retrofit retrofit) {
@@ -43,9 +53,17 @@ final class BuiltInConverters extends Converter.Factory {
     @Override
     public Converter<?, RequestBody> requestBodyConverter(Type type,
                                                           Annotation[] parameterAnnotations, Annotation[] methodAnnotations, Retrofit retrofit) {
-        if (RequestBody.class.isAssignableFrom(Utils.getRawType(type))) {
+        Class<?> rawType = Utils.getRawType(type);
+        if (RequestBody.class.isAssignableFrom(rawType)) {
             return RequestBodyConverter.INSTANCE;
         }
+        // 直接上传文件
+        if (rawType == File.class) {
+            return FileRequestBodyConverter.INSTANCE;
+        }
+        if (FileChannel.class.isAssignableFrom(rawType)) {
+            return FileChannelRequestBodyConverter.INSTANCE;
+        }
         return null;
     }
 
@@ -68,6 +86,107 @@ final class BuiltInConverters extends Converter.Factory {
         }
     }
 
+    /**
+     * Sends a file as {@code application/octet-stream}. The length is taken when the request is
+     * created and the file is read straight into okio's segments while the body is written.
+     */
+    static final class FileRequestBodyConverter implements Converter<File, RequestBody> {
+        static final FileRequestBodyConverter INSTANCE = new FileRequestBodyConverter();
+
+        @Override
+        public RequestBody convert(final File value) throws IOException {
+            final long contentLength = value.length();
+            return new RequestBody() {
+                @Override
+                public MediaType contentType() {
+                    return OCTET_STREAM;
+                }
+
+                @Override
+                public long contentLength() {
+                    return contentLength;
+                }
+
+                @Override
+                public void writeTo(BufferedSink sink) throws IOException {
+                    Source source = Okio.source(value);
+                    try {
+                        // 文件在创建请求后被修改时，也只发送声明的长度
+                        sink.write(source, contentLength);
+                    } finally {
+                        source.close();
+                    }
+                }
+            };
+        }
+    }
+
+    /**
+     * Sends the bytes of a channel from its position when the request is created to its end, as
+     * {@code application/octet-stream}. The channel is read with positional reads, so its position
+     * is never changed and the body can be retried. The channel is not closed; it belongs to the
+     * caller.
+     */
+    static final class FileChannelRequestBodyConverter
+            implements Converter<FileChannel, RequestBody> {
+        static final FileChannelRequestBodyConverter INSTANCE =
+                new FileChannelRequestBodyConverter();
+
+        @Override
+        public RequestBody convert(final FileChannel value) throws IOException {
+            final long position = value.position();
+            final long contentLength = value.size() - position;
+            return new RequestBody() {
+                @Override
+                public MediaType contentType() {
+                    return OCTET_STREAM;
+                }
+
+                @Override
+                public long contentLength() {
+                    return contentLength;
+                }
+
+                @Override
+                public void writeTo(BufferedSink sink) throws IOException {
+                    // 不关闭source，否则会关闭调用者的channel
+                    sink.write(Okio.source(new PositionalInputStream(value, position)), contentLength);
+                }
+            };
+        }
+    }
+
+    /**
+     * Reads a {@link FileChannel} with {@link FileChannel#read(ByteBuffer, long)}. okio's
+     * {@link Okio#source(InputStream)} passes the array of the sink's tail segment to
+     * {@link #read(byte[], int, int)}, so the channel fills okio's segments directly, with no
+     * intermediate array and none of the locking done by {@link java.nio.channels.Channels}'
+     * stream.
+     */
+    static final class PositionalInputStream extends InputStream {
+        private final FileChannel channel;
+        private long position;
+
+        PositionalInputStream(FileChannel channel, long position) {
+            this.channel = channel;
+            this.position = position;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            int read = channel.read(ByteBuffer.wrap(b, off, len), position);
+            if (read > 0) position += read;
+            return read;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+        }
+    }
+
     static final class StreamingResponseBodyConverter
             implements Converter<ResponseBody, ResponseBody> {
         static final StreamingResponseBodyConverter INSTANCE = new StreamingResponseBodyConverter();
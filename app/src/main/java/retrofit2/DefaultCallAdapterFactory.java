@@ -33,7 +33,7 @@ final class DefaultCallAdapterFactory extends CallAdapter.Factory {
         }
         //这里的returnType是API中函数的返回类型，比如Call<Rep>
         //responseType则是Rep，就是returnType对应的泛型类型。
-        final Type responseType = Utils.getCallResponseType(returnType);
+        final Type responseType = retrofit.typeCache.getCallResponseType(returnType);
         return new CallAdapter<Object, Call<?>>() {
             @Override
             public Type responseType() {
@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2017 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package retrofit2;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSource;
+
+/**
+ * Decides what becomes of the body of a non-2xx response before it is handed out as
+ * {@link Response#errorBody()}. Set with {@link Retrofit.Builder#errorBodyPolicy}; the default
+ * {@link #buffer()} reads the entire body into memory.
+ * <p>
+ * Each instance counts the bodies it dropped in whole or in part and the bytes they lost. The byte
+ * count uses the declared {@code Content-Length}; for a body without one only the bytes already
+ * read past the cap are known, so the count is then a lower bound.
+ * <p>
+ * 非2xx应答的错误消息体的处理方式：全部缓存、最多缓存若干字节、不读取或者丢弃
+ */
+public final class ErrorBodyPolicy {
+    private static final int BUFFER = 0;
+    private static final int LAZY = 1;
+    private static final int DISCARD = 2;
+
+    private final int mode;
+    // mode为BUFFER时最多缓存的字节数
+    private final long maxBytes;
+    private final AtomicLong droppedBodies = new AtomicLong();
+    private final AtomicLong droppedBytes = new AtomicLong();
+
+    private ErrorBodyPolicy(int mode, long maxBytes) {
+        this.mode = mode;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Read the entire error body into memory. This is the default.
+     */
+    public static ErrorBodyPolicy buffer() {
+        return new ErrorBodyPolicy(BUFFER, Long.MAX_VALUE);
+    }
+
+    /**
+     * Read at most {@code maxBytes} of the error body into memory and drop the rest. The
+     * {@linkplain ResponseBody#contentLength() content length} of a truncated body is the number of
+     * bytes kept.
+     */
+    public static ErrorBodyPolicy bufferUpTo(long maxBytes) {
+        if (maxBytes < 0) throw new IllegalArgumentException("maxBytes < 0: " + maxBytes);
+        return new ErrorBodyPolicy(BUFFER, maxBytes);
+    }
+
+    /**
+     * Leave the error body unread: {@link Response#errorBody()} is the live body of the connection.
+     * The caller must read it off the main thread, or close it, to release the connection.
+     */
+    public static ErrorBodyPolicy lazy() {
+        return new ErrorBodyPolicy(LAZY, Long.MAX_VALUE);
+    }
+
+    /**
+     * Close the error body unread: {@link Response#errorBody()} is empty but keeps the content type.
+     */
+    public static ErrorBodyPolicy discard() {
+        return new ErrorBodyPolicy(DISCARD, 0);
+    }
+
+    /**
+     * The number of error bodies which were discarded or truncated.
+     */
+    public long droppedBodyCount() {
+        return droppedBodies.get();
+    }
+
+    /**
+     * The number of error body bytes which were discarded or truncated; see the class
+     * documentation for bodies without a {@code Content-Length}.
+     */
+    public long droppedByteCount() {
+        return droppedBytes.get();
+    }
+
+    /**
+     * Returns the body to expose as the error body of a response. Unless it is returned itself,
+     * {@code rawBody} is closed.
+     */
+    ResponseBody errorBody(ResponseBody rawBody) throws IOException {
+        if (mode == LAZY) {
+            return rawBody;
+        }
+        try {
+            if (mode == DISCARD) {
+                long contentLength = rawBody.contentLength();
+                dropped(contentLength != -1 ? contentLength : 0);
+                return ResponseBody.create(rawBody.contentType(), 0, new Buffer());
+            }
+            if (maxBytes == Long.MAX_VALUE) {
+                // Buffer the entire body to avoid future I/O.
+                return Utils.buffer(rawBody);
+            }
+
+            BufferedSource source = rawBody.source();
+            Buffer buffer = new Buffer();
+            long remaining = maxBytes;
+            while (remaining > 0) {
+                long read = source.read(buffer, remaining);
+                if (read == -1) break;
+                remaining -= read;
+            }
+            if (!source.exhausted()) {
+                long contentLength = rawBody.contentLength();
+                dropped(contentLength != -1
+                        ? contentLength - buffer.size()
+                        : source.buffer().size());
+            }
+            return ResponseBody.create(rawBody.contentType(), buffer.size(), buffer);
+        } finally {
+            rawBody.close();
+        }
+    }
+
+    private void dropped(long byteCount) {
+        droppedBodies.incrementAndGet();
+        droppedBytes.addAndGet(byteCount);
+    }
+}
@@ -46,7 +46,7 @@ final class ExecutorCallAdapterFactory extends CallAdapter.Factory {
             return null;
         }
         // ??????????????????????
-        final Type responseType = Utils.getCallResponseType(returnType);
+        final Type responseType = retrofit.typeCache.getCallResponseType(returnType);
         return new CallAdapter<Object, Call<?>>() {
             @Override
             public Type responseType() {
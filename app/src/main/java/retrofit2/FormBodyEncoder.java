@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2017 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package retrofit2;
+
+import java.io.IOException;
+
+import okhttp3.FormBody;
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.Buffer;
+import okio.BufferedSink;
+
+import static retrofit2.Utils.checkNotNull;
+
+/**
+ * Percent-encodes form fields in a single pass and collects them in a {@link FormBody.Builder},
+ * so {@code @FormUrlEncoded} requests still carry an {@link FormBody}. Fields which need no
+ * encoding are passed through as-is, and the others are encoded into one reused
+ * {@link StringBuilder}. The encoding matches {@link FormBody.Builder#add} and
+ * {@link FormBody.Builder#addEncoded}; because the output is already canonical,
+ * {@link FormBody.Builder#addEncoded} only scans it and keeps the same string.
+ * <p>
+ * When created with {@code pooled} set, the encoded fields are written straight into an okio
+ * {@link Buffer} instead, whose segments come from okio's segment pool. The resulting body's
+ * content length is the buffer's size, so neither measuring nor writing it walks the fields
+ * again, but it is not a {@link FormBody}.
+ * <p>
+ * 单次扫描完成编码，默认生成FormBody；pooled时直接写入Buffer
+ */
+final class FormBodyEncoder {
+    private static final String FORM_ENCODE_SET = " \"':;<=>@[]^`{}|/\\?#&!$(),~";
+    // 下标为ASCII字符，true表示在表单中总是需要编码
+    private static final boolean[] FORM_ALWAYS_ENCODE = new boolean[0x80];
+
+    static {
+        for (int c = 0; c < 0x20; c++) {
+            FORM_ALWAYS_ENCODE[c] = true;
+        }
+        FORM_ALWAYS_ENCODE[0x7f] = true;
+        for (int i = 0; i < FORM_ENCODE_SET.length(); i++) {
+            FORM_ALWAYS_ENCODE[FORM_ENCODE_SET.charAt(i)] = true;
+        }
+    }
+
+    // 二者只有一个不为null
+    private final FormBody.Builder builder;
+    private final Buffer buffer;
+    private final StringBuilder scratch = new StringBuilder();
+
+    FormBodyEncoder(boolean pooled) {
+        this.builder = pooled ? null : new FormBody.Builder();
+        this.buffer = pooled ? new Buffer() : null;
+    }
+
+    void add(String name, String value, boolean encoded) {
+        checkNotNull(name, "name == null");
+        checkNotNull(value, "value == null");
+        String encodedName = canonicalize(name, encoded);
+        String encodedValue = canonicalize(value, encoded);
+        if (buffer == null) {
+            builder.addEncoded(encodedName, encodedValue);
+            return;
+        }
+        // 编码结果都是ASCII，writeUtf8即逐字节写入
+        if (buffer.size() > 0) buffer.writeByte('&');
+        buffer.writeUtf8(encodedName).writeByte('=').writeUtf8(encodedValue);
+    }
+
+    RequestBody build() {
+        return buffer != null ? new PooledFormBody(buffer) : builder.build();
+    }
+
+    private String canonicalize(String input, boolean alreadyEncoded) {
+        int limit = input.length();
+        int i = 0;
+        // 不需要编码的前缀直接跳过，整个字符串都不需要编码时原样返回
+        while (i < limit && !needsEncoding(input.charAt(i), alreadyEncoded)) {
+            i++;
+        }
+        if (i == limit) return input;
+
+        StringBuilder out = scratch;
+        out.setLength(0);
+        out.append(input, 0, i);
+        int codePoint;
+        for (; i < limit; i += Character.charCount(codePoint)) {
+            codePoint = input.codePointAt(i);
+            if (alreadyEncoded
+                    && (codePoint == '\t' || codePoint == '\n' || codePoint == '\f' || codePoint == '\r')) {
+                // Skip this character.
+            } else if (codePoint == '+') {
+                // A literal '+' would be read back as a space.
+                if (alreadyEncoded) {
+                    out.append('+');
+                } else {
+                    RequestBuilder.percentEncode(out, '+');
+                }
+            } else if (codePoint >= 0x80) {
+                // Form values are ASCII only: percent encode the UTF-8 bytes.
+                RequestBuilder.percentEncodeUtf8(out, codePoint);
+            } else if (FORM_ALWAYS_ENCODE[codePoint] || (codePoint == '%' && !alreadyEncoded)) {
+                RequestBuilder.percentEncode(out, codePoint);
+            } else {
+                out.append((char) codePoint);
+            }
+        }
+        return out.toString();
+    }
+
+    private static boolean needsEncoding(char c, boolean alreadyEncoded) {
+        if (c >= 0x80) return true;
+        if (c == '+' || c == '%') return !alreadyEncoded;
+        return FORM_ALWAYS_ENCODE[c];
+    }
+
+    /** A form body backed by the buffer the fields were encoded into. */
+    private static final class PooledFormBody extends RequestBody {
+        private static final MediaType CONTENT_TYPE =
+                MediaType.parse("application/x-www-form-urlencoded");
+
+        private final Buffer buffer;
+
+        PooledFormBody(Buffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public MediaType contentType() {
+            return CONTENT_TYPE;
+        }
+
+        @Override
+        public long contentLength() {
+            return buffer.size();
+        }
+
+        @Override
+        public void writeTo(BufferedSink sink) throws IOException {
+            // copyTo共享segment，不复制数据；buffer不变，可以重复写入
+            buffer.copyTo(sink.buffer(), 0, buffer.size());
+            sink.emitCompleteSegments();
+        }
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright (C) 2017 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package retrofit2;
+
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import static retrofit2.Utils.checkNotNull;
+
+/**
+ * Lets service methods return {@link Future Future&lt;T&gt;},
+ * {@link Future Future&lt;Response&lt;T&gt;&gt;}, or the same as a {@link ListenableFuture}. The
+ * future is completed from {@link Call#enqueue} on the thread which delivers the response; only
+ * the listeners hop to the callback executor, unless they are given another executor. Listeners
+ * let many parallel calls be combined without blocking a thread per future. Cancelling the future
+ * cancels the underlying HTTP call.
+ * <p>
+ * When created with an {@link Executor} the call is instead run with {@link Call#execute} as a task
+ * of that executor. This suits an executor which starts a virtual thread per task: a blocked call
+ * then costs no platform thread, but is not limited by the OkHttp {@code Dispatcher}. See
+ * {@link Platform.VirtualThreads}, which is enabled with {@code -Dretrofit2.virtualThreads=true}.
+ * <p>
+ * A {@code Future<T>} fails with {@link HttpException} for a non-2xx response.
+ * {@code Future<Response<T>>} completes with every response and fails only on I/O or conversion
+ * errors.
+ * <p>
+ * API中的方法可以直接返回Future，取消Future时同时取消网络请求
+ */
+final class FutureCallAdapterFactory extends CallAdapter.Factory {
+    // null时使用enqueue，否则在executor中执行execute
+    private final Executor executor;
+    // 监听者默认的executor，null时在完成future的线程中执行
+    private final Executor callbackExecutor;
+
+    FutureCallAdapterFactory(Executor executor, Executor callbackExecutor) {
+        this.executor = executor;
+        this.callbackExecutor = callbackExecutor;
+    }
+
+    @Override
+    public CallAdapter<?, ?> get(Type returnType, Annotation[] annotations, Retrofit retrofit) {
+        Class<?> rawType = getRawType(returnType);
+        if (rawType != Future.class && rawType != ListenableFuture.class) {
+            return null;
+        }
+        if (!(returnType instanceof ParameterizedType)) {
+            String name = rawType.getSimpleName();
+            throw new IllegalStateException(name + " return type must be parameterized as "
+                    + name + "<Foo> or " + name + "<? extends Foo>");
+        }
+        Type innerType = getParameterUpperBound(0, (ParameterizedType) returnType);
+
+        if (getRawType(innerType) != Response.class) {
+            // Generic type is not Response<T>. Use it for body-only adapter.
+            return new FutureCallAdapter<>(innerType, false, executor, callbackExecutor);
+        }
+
+        // Generic type is Response<T>. Extract T and create the Response version of the adapter.
+        if (!(innerType instanceof ParameterizedType)) {
+            throw new IllegalStateException("Response must be parameterized"
+                    + " as Response<Foo> or Response<? extends Foo>");
+        }
+        Type responseType = getParameterUpperBound(0, (ParameterizedType) innerType);
+        return new FutureCallAdapter<>(responseType, true, executor, callbackExecutor);
+    }
+
+    private static final class FutureCallAdapter<R> implements CallAdapter<R, Future<?>> {
+        private final Type responseType;
+        // true: Future<Response<R>>; false: Future<R>
+        private final boolean wrapResponse;
+        private final Executor executor;
+        private final Executor callbackExecutor;
+
+        FutureCallAdapter(Type responseType, boolean wrapResponse, Executor executor,
+                          Executor callbackExecutor) {
+            this.responseType = responseType;
+            this.wrapResponse = wrapResponse;
+            this.executor = executor;
+            this.callbackExecutor = callbackExecutor;
+        }
+
+        @Override
+        public Type responseType() {
+            return responseType;
+        }
+
+        @Override
+        public Future<?> adapt(final Call<R> call) {
+            // 交给executor时运行该任务；enqueue时不会运行它，由回调完成future
+            final CallFuture<Object> future = new CallFuture<>(call, new Callable<Object>() {
+                @Override
+                public Object call() throws IOException {
+                    return result(call.execute());
+                }
+            }, callbackExecutor);
+            if (executor != null) {
+                executor.execute(future);
+                return future;
+            }
+            call.enqueue(new Callback<R>() {
+                @Override
+                public void onResponse(Call<R> call, Response<R> response) {
+                    try {
+                        future.complete(result(response));
+                    } catch (Throwable t) {
+                        future.fail(t);
+                    }
+                }
+
+                @Override
+                public void onFailure(Call<R> call, Throwable t) {
+                    future.fail(t);
+                }
+            });
+            return future;
+        }
+
+        Object result(Response<R> response) {
+            if (wrapResponse) {
+                return response;
+            }
+            if (response.isSuccessful()) {
+                return response.body();
+            }
+            throw new HttpException(response);
+        }
+    }
+
+    /**
+     * A future completed either by running its task or through {@link #complete} and
+     * {@link #fail}. Listeners are queued until {@link #done()} and run once.
+     */
+    static final class CallFuture<T> extends FutureTask<T> implements ListenableFuture<T> {
+        private final Call<?> call;
+        private final Executor callbackExecutor;
+        // 还没有完成时添加的监听者，完成后为null
+        private List<Listener> listeners = new ArrayList<>();
+
+        CallFuture(Call<?> call, Callable<T> task, Executor callbackExecutor) {
+            super(task);
+            this.call = call;
+            this.callbackExecutor = callbackExecutor;
+        }
+
+        void complete(T result) {
+            set(result);
+        }
+
+        void fail(Throwable t) {
+            setException(t);
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean canceled = super.cancel(mayInterruptIfRunning);
+            if (canceled) {
+                // 同时取消网络请求
+                call.cancel();
+            }
+            return canceled;
+        }
+
+        @Override
+        public void addListener(Runnable listener) {
+            addListener(listener, callbackExecutor);
+        }
+
+        @Override
+        public void addListener(Runnable listener, Executor executor) {
+            checkNotNull(listener, "listener == null");
+            Listener entry = new Listener(listener, executor);
+            synchronized (this) {
+                if (listeners != null) {
+                    listeners.add(entry);
+                    return;
+                }
+            }
+            entry.run();
+        }
+
+        @Override
+        protected void done() {
+            List<Listener> listeners;
+            synchronized (this) {
+                listeners = this.listeners;
+                this.listeners = null;
+            }
+            for (Listener listener : listeners) {
+                listener.run();
+            }
+        }
+    }
+
+    private static final class Listener {
+        private final Runnable runnable;
+        // null时直接在当前线程执行
+        private final Executor executor;
+
+        Listener(Runnable runnable, Executor executor) {
+            this.runnable = runnable;
+            this.executor = executor;
+        }
+
+        void run() {
+            try {
+                if (executor != null) {
+                    executor.execute(runnable);
+                } else {
+                    runnable.run();
+                }
+            } catch (RuntimeException e) {
+                // 一个监听者的错误不影响其他监听者和完成future的线程
+                e.printStackTrace();
+            }
+        }
+    }
+}
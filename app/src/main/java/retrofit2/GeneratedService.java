@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2017 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package retrofit2;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+
+/**
+ * Base class of the service implementations generated by the retrofit-compiler annotation
+ * processor. Do not extend this class by hand.
+ * <p>
+ * For a service interface {@code com.example.Api} the processor writes
+ * {@code com.example.Api_RetrofitService} (nested interfaces use {@code Outer_Api_RetrofitService}).
+ * When that class exists {@link Retrofit#create} instantiates it instead of a dynamic proxy. Each
+ * generated method calls {@link #invoke} with its index, and the method annotations it was
+ * compiled from are not parsed again at runtime.
+ * <p>
+ * 编译期生成的API实现类的父类，替代动态代理和运行时的注解解析
+ */
+public abstract class GeneratedService {
+    static final String SUFFIX = "_RetrofitService";
+
+    private final Retrofit retrofit;
+    // 下标与生成代码中的方法下标一致
+    private final Method[] methods;
+    // 第一次调用时填充；ServiceMethod的字段都是final的，多线程下重复赋值也没有问题
+    private final ServiceMethod<?, ?>[] serviceMethods;
+
+    /**
+     * @param retrofit       retrofit对象
+     * @param service        API接口
+     * @param methodNames    每个方法的名字
+     * @param parameterTypes 每个方法的参数类型，用于找到对应的Method
+     * @param specs          每个方法编译期解析的注解，见 {@link ServiceMethodSpec#decode}
+     */
+    protected GeneratedService(Retrofit retrofit, Class<?> service, String[] methodNames,
+                               Class<?>[][] parameterTypes, String[] specs) {
+        this.retrofit = retrofit;
+        this.methods = new Method[methodNames.length];
+        this.serviceMethods = new ServiceMethod<?, ?>[methodNames.length];
+
+        Method[] declaredMethods = service.getDeclaredMethods();
+        for (int i = 0; i < methodNames.length; i++) {
+            Method method = findMethod(declaredMethods, methodNames[i], parameterTypes[i]);
+            if (method == null) {
+                throw new IllegalStateException("Generated code for " + service.getName()
+                        + " is out of date: method " + methodNames[i] + " not found.");
+            }
+            methods[i] = method;
+            retrofit.registerServiceMethodSpec(method, ServiceMethodSpec.decode(specs[i]));
+        }
+    }
+
+    private static Method findMethod(Method[] methods, String name, Class<?>[] parameterTypes) {
+        for (Method method : methods) {
+            if (method.getName().equals(name)
+                    && Arrays.equals(method.getParameterTypes(), parameterTypes)) {
+                return method;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Invokes the service method at {@code index}, in the same way as the dynamic proxy returned by
+     * {@link Retrofit#create} would.
+     */
+    @SuppressWarnings("unchecked") // The generated caller declares the adapted return type.
+    protected final <T> T invoke(int index, Object... args) {
+        ServiceMethod<Object, Object> serviceMethod =
+                (ServiceMethod<Object, Object>) serviceMethods[index];
+        if (serviceMethod == null) {
+            serviceMethod = (ServiceMethod<Object, Object>) retrofit.loadServiceMethod(methods[index]);
+            serviceMethods[index] = serviceMethod;
+        }
+        OkHttpCall<Object> okHttpCall = new OkHttpCall<>(serviceMethod, args);
+        return (T) serviceMethod.callAdapter.adapt(okHttpCall);
+    }
+}
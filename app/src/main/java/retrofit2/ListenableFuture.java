@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2017 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package retrofit2;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+
+/**
+ * A {@link Future} which runs listeners once it completes, so that the results of many parallel
+ * calls can be combined without blocking a thread on each {@link #get()}. Service methods may
+ * return it instead of {@link Future}:
+ * <pre><code>
+ * &#64;GET("users/{user}")
+ * ListenableFuture&lt;User&gt; user(@Path("user") String user);
+ * </code></pre>
+ * A listener added after completion runs immediately on its executor. Listeners are run whether
+ * the future succeeded, failed or was cancelled; call {@link #get()} from the listener to read the
+ * outcome, which then no longer blocks.
+ * <p>
+ * 完成时通知监听者的Future，组合多个并行的请求时不需要阻塞线程
+ *
+ * @param <T> the result type.
+ */
+public interface ListenableFuture<T> extends Future<T> {
+    /**
+     * Run {@code listener} on the {@link Retrofit} callback executor once this future completes.
+     * When there is no callback executor, the listener runs on the thread which completes the
+     * future.
+     */
+    void addListener(Runnable listener);
+
+    /**
+     * Run {@code listener} on {@code executor} once this future completes.
+     */
+    void addListener(Runnable listener, Executor executor);
+}
@@ -16,6 +16,8 @@
 package retrofit2;
 
 import java.io.IOException;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 import okhttp3.MediaType;
 import okhttp3.Request;
@@ -27,17 +29,37 @@ import okio.Okio;
 
 import static retrofit2.Utils.checkNotNull;
 
+/**
+ * The lifecycle is lock-free. {@link #executed} flips once from 0 to 1, so a call is executed at
+ * most once. {@link #rawCall} moves from null (idle) to {@link #CREATING} and then to either the
+ * {@link okhttp3.Call} or the {@link Throwable} which creating it threw; only the thread which
+ * won the transition to {@code CREATING} builds the request; other threads wanting the call in
+ * the meantime wait on this object's monitor, since building the request runs the request body
+ * converters and can take a while. {@link #canceled} is written before {@link #rawCall} is read
+ * and the other way around, so a cancel racing with creation is always seen by one of the two
+ * sides.
+ * <p>
+ * 通过CAS控制：只执行一次，只创建一次okhttp3.Call，取消与创建并发时不会丢失；只有等待创建时才加锁
+ */
 final class OkHttpCall<T> implements Call<T> {
+    // 正在创建okhttp3.Call，其它线程等待
+    private static final Object CREATING = new Object();
+    @SuppressWarnings("rawtypes")
+    private static final AtomicIntegerFieldUpdater<OkHttpCall> EXECUTED =
+            AtomicIntegerFieldUpdater.newUpdater(OkHttpCall.class, "executed");
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<OkHttpCall, Object> RAW_CALL =
+            AtomicReferenceFieldUpdater.newUpdater(OkHttpCall.class, Object.class, "rawCall");
+
     // API中每个方法都会生成对应的一个ServiceMethod，解析该方法对应的Annotation信息。
     private final ServiceMethod<T, ?> serviceMethod;
     private final Object[] args;
 
     private volatile boolean canceled;
-
-    // All guarded by this.
-    private okhttp3.Call rawCall;
-    private Throwable creationFailure; // Either a RuntimeException or IOException.
-    private boolean executed;
+    // 0 未执行; 1 已执行
+    private volatile int executed;
+    // null, CREATING, okhttp3.Call 或者创建失败时的 Throwable
+    private volatile Object rawCall;
 
     OkHttpCall(ServiceMethod<T, ?> serviceMethod, Object[] args) {
         this.serviceMethod = serviceMethod;
@@ -52,25 +74,10 @@ final class OkHttpCall<T> implements Call<T> {
     }
 
     @Override
-    public synchronized Request request() {
-        okhttp3.Call call = rawCall;
-        if (call != null) {
-            return call.request();
-        }
-        if (creationFailure != null) {
-            if (creationFailure instanceof IOException) {
-                throw new RuntimeException("Unable to create request.", creationFailure);
-            } else {
-                throw (RuntimeException) creationFailure;
-            }
-        }
+    public Request request() {
         try {
-            return (rawCall = createRawCall()).request();
-        } catch (RuntimeException e) {
-            creationFailure = e;
-            throw e;
+            return rawCall().request();
         } catch (IOException e) {
-            creationFailure = e;
             throw new RuntimeException("Unable to create request.", e);
         }
     }
@@ -81,28 +88,17 @@ final class OkHttpCall<T> implements Call<T> {
 
         //网络请求的Call，不是retrofit的call。
         //如果还是混淆了这两个call，那么只能再多看看Okhttp是怎么网络请求的。
-        okhttp3.Call call;
-        Throwable failure;
-
         // 禁止同一个call入列两次
-        synchronized (this) {
-            if (executed) throw new IllegalStateException("Already executed.");
-            executed = true;
-
-            call = rawCall;
-            failure = creationFailure;
-            if (call == null && failure == null) {
-                try {
-                    //  创建真实的Call，即Okhttp的Call
-                    call = rawCall = createRawCall();
-                } catch (Throwable t) {
-                    failure = creationFailure = t;
-                }
-            }
+        if (!EXECUTED.compareAndSet(this, 0, 1)) {
+            throw new IllegalStateException("Already executed.");
         }
 
-        if (failure != null) {
-            callback.onFailure(this, failure);
+        okhttp3.Call call;
+        try {
+            //  创建真实的Call，即Okhttp的Call
+            call = rawCall();
+        } catch (Throwable t) {
+            callback.onFailure(this, t);
             return;
         }
 
@@ -154,38 +150,18 @@ final class OkHttpCall<T> implements Call<T> {
     }
 
     @Override
-    public synchronized boolean isExecuted() {
-        return executed;
+    public boolean isExecuted() {
+        return executed != 0;
     }
 
     @Override
     public Response<T> execute() throws IOException {
-        okhttp3.Call call;
-
-        synchronized (this) {
-            // 正在执行，抛出异常
-            if (executed) throw new IllegalStateException("Already executed.");
-            executed = true;
-
-            // creationFailure错误，抛出异常
-            if (creationFailure != null) {
-                if (creationFailure instanceof IOException) {
-                    throw (IOException) creationFailure;
-                } else {
-                    throw (RuntimeException) creationFailure;
-                }
-            }
-            // call构建
-            call = rawCall;
-            if (call == null) {
-                try {
-                    call = rawCall = createRawCall();
-                } catch (IOException | RuntimeException e) {
-                    creationFailure = e;
-                    throw e;
-                }
-            }
+        // 正在执行，抛出异常
+        if (!EXECUTED.compareAndSet(this, 0, 1)) {
+            throw new IllegalStateException("Already executed.");
         }
+        // call构建，creationFailure错误时抛出异常
+        okhttp3.Call call = rawCall();
         // 如果请求取消
         if (canceled) {
             call.cancel();
@@ -194,6 +170,68 @@ final class OkHttpCall<T> implements Call<T> {
         return parseResponse(call.execute());
     }
 
+    /**
+     * Returns the {@link okhttp3.Call}, creating it on first use, or throws the failure of that
+     * creation. A thread which finds another one creating the call waits for it.
+     */
+    private okhttp3.Call rawCall() throws IOException {
+        while (true) {
+            Object state = rawCall;
+            if (state instanceof okhttp3.Call) {
+                return (okhttp3.Call) state;
+            }
+            if (state instanceof Throwable) {
+                throw creationFailure((Throwable) state);
+            }
+            if (state == CREATING) {
+                awaitCreation();
+                continue;
+            }
+            if (RAW_CALL.compareAndSet(this, null, CREATING)) {
+                Object result = null;
+                try {
+                    okhttp3.Call call = createRawCall();
+                    result = call;
+                    return call;
+                } catch (Throwable t) {
+                    result = t;
+                    throw creationFailure(t);
+                } finally {
+                    // 不能停留在CREATING状态
+                    synchronized (this) {
+                        rawCall = result;
+                        notifyAll();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Blocks until the thread creating the call has stored the call or its failure. Interrupts
+     * are deferred: the creator always finishes, and the caller needs the call.
+     */
+    private synchronized void awaitCreation() {
+        boolean interrupted = false;
+        while (rawCall == CREATING) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static IOException creationFailure(Throwable t) throws IOException {
+        if (t instanceof IOException) throw (IOException) t;
+        if (t instanceof RuntimeException) throw (RuntimeException) t;
+        if (t instanceof Error) throw (Error) t;
+        throw new RuntimeException(t);
+    }
+
     /**
      * 创建一个call请求
      *
@@ -227,13 +265,9 @@ final class OkHttpCall<T> implements Call<T> {
 
         int code = rawResponse.code();
         if (code < 200 || code >= 300) {
-            try {
-                // Buffer the entire body to avoid future I/O.
-                ResponseBody bufferedBody = Utils.buffer(rawBody);
-                return Response.error(bufferedBody, rawResponse);
-            } finally {
-                rawBody.close();
-            }
+            // 按照ErrorBodyPolicy缓存、截断或者丢弃错误消息体
+            ResponseBody errorBody = serviceMethod.errorBodyPolicy.errorBody(rawBody);
+            return Response.error(errorBody, rawResponse);
         }
         // 204 No Content  205 Reset Content
         if (code == 204 || code == 205) {
@@ -258,12 +292,10 @@ final class OkHttpCall<T> implements Call<T> {
     public void cancel() {
         canceled = true;
 
-        okhttp3.Call call;
-        synchronized (this) {
-            call = rawCall;
-        }
-        if (call != null) {
-            call.cancel();
+        // 正在创建时由创建者在执行前检查canceled
+        Object call = rawCall;
+        if (call instanceof okhttp3.Call) {
+            ((okhttp3.Call) call).cancel();
         }
     }
 
@@ -272,9 +304,8 @@ final class OkHttpCall<T> implements Call<T> {
         if (canceled) {
             return true;
         }
-        synchronized (this) {
-            return rawCall != null && rawCall.isCanceled();
-        }
+        Object call = rawCall;
+        return call instanceof okhttp3.Call && ((okhttp3.Call) call).isCanceled();
     }
 
     static final class NoContentResponseBody extends ResponseBody {
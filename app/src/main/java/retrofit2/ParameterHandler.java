@@ -15,6 +15,7 @@
  */
 package retrofit2;
 
+import java.io.File;
 import java.io.IOException;
 import java.lang.reflect.Array;
 import java.util.Map;
@@ -55,6 +56,70 @@ abstract class ParameterHandler<T> {
         };
     }
 
+    /**
+     * Like {@link #array()}, but arrays of a primitive {@code componentType} formatted by the
+     * default {@link BuiltInConverters.ToStringConverter} are read without reflection or boxing.
+     * Only for handlers which convert their value with {@code converter}.
+     */
+    final ParameterHandler<Object> array(Class<?> componentType, Converter<?, String> converter) {
+        if (componentType.isPrimitive() && converter == BuiltInConverters.ToStringConverter.INSTANCE) {
+            // converter是ToStringConverter，直接传入String得到的结果与传入包装类型相同
+            //noinspection unchecked
+            return new PrimitiveArray((ParameterHandler<Object>) this);
+        }
+        return array();
+    }
+
+    /**
+     * Applies a handler to the decimal string of each element of a primitive array.
+     */
+    static final class PrimitiveArray extends ParameterHandler<Object> {
+        private final ParameterHandler<Object> handler;
+
+        PrimitiveArray(ParameterHandler<Object> handler) {
+            this.handler = handler;
+        }
+
+        @Override
+        void apply(RequestBuilder builder, Object values) throws IOException {
+            if (values == null) return; // Skip null values.
+
+            if (values instanceof int[]) {
+                for (int value : (int[]) values) {
+                    handler.apply(builder, String.valueOf(value));
+                }
+            } else if (values instanceof long[]) {
+                for (long value : (long[]) values) {
+                    handler.apply(builder, String.valueOf(value));
+                }
+            } else if (values instanceof short[]) {
+                for (short value : (short[]) values) {
+                    handler.apply(builder, String.valueOf(value));
+                }
+            } else if (values instanceof byte[]) {
+                for (byte value : (byte[]) values) {
+                    handler.apply(builder, String.valueOf(value));
+                }
+            } else if (values instanceof double[]) {
+                for (double value : (double[]) values) {
+                    handler.apply(builder, String.valueOf(value));
+                }
+            } else if (values instanceof float[]) {
+                for (float value : (float[]) values) {
+                    handler.apply(builder, String.valueOf(value));
+                }
+            } else if (values instanceof boolean[]) {
+                for (boolean value : (boolean[]) values) {
+                    handler.apply(builder, String.valueOf(value));
+                }
+            } else {
+                for (char value : (char[]) values) {
+                    handler.apply(builder, String.valueOf(value));
+                }
+            }
+        }
+    }
+
     static final class RelativeUrl extends ParameterHandler<Object> {
         @Override
         void apply(RequestBuilder builder, Object value) {
@@ -81,13 +146,16 @@ abstract class ParameterHandler<T> {
     static final class Path<T> extends ParameterHandler<T> {
         // path value
         private final String name;
+        // name在url模板中的下标
+        private final int index;
         // string转化器
         private final Converter<T, String> valueConverter;
         //
         private final boolean encoded;
 
-        Path(String name, Converter<T, String> valueConverter, boolean encoded) {
+        Path(String name, int index, Converter<T, String> valueConverter, boolean encoded) {
             this.name = checkNotNull(name, "name == null");
+            this.index = index;
             this.valueConverter = valueConverter;
             this.encoded = encoded;
         }
@@ -99,7 +167,7 @@ abstract class ParameterHandler<T> {
                         "Path parameter \"" + name + "\" value must not be null.");
             }
             //
-            builder.addPathParam(name, valueConverter.convert(value), encoded);
+            builder.addPathParam(index, valueConverter.convert(value), encoded);
         }
     }
 
@@ -266,6 +334,67 @@ abstract class ParameterHandler<T> {
         }
     }
 
+    /**
+     * A named part whose value is a {@link File}. The part is sent with a {@code filename} taken from
+     * {@link File#getName()}, the way {@link MultipartBody.Part#createFormData(String, String,
+     * RequestBody)} sends one.
+     */
+    static final class FilePart extends ParameterHandler<File> {
+        private final String name;
+        private final String transferEncoding;
+        private final Converter<File, RequestBody> converter;
+
+        FilePart(String name, String transferEncoding, Converter<File, RequestBody> converter) {
+            this.name = name;
+            this.transferEncoding = transferEncoding;
+            this.converter = converter;
+        }
+
+        @Override
+        void apply(RequestBuilder builder, File value) {
+            if (value == null) return; // Skip null values.
+
+            RequestBody body;
+            try {
+                body = converter.convert(value);
+            } catch (IOException e) {
+                throw new RuntimeException("Unable to convert " + value + " to RequestBody", e);
+            }
+            builder.addPart(fileHeaders(name, value, transferEncoding), body);
+        }
+    }
+
+    static Headers fileHeaders(String name, File file, String transferEncoding) {
+        StringBuilder disposition = new StringBuilder("form-data; name=\"").append(name)
+                .append("\"; filename=");
+        appendQuotedString(disposition, file.getName());
+        return Headers.of("Content-Disposition", disposition.toString(),
+                "Content-Transfer-Encoding", transferEncoding);
+    }
+
+    // 与MultipartBody.Part.createFormData相同的转义方式
+    private static void appendQuotedString(StringBuilder target, String value) {
+        target.append('"');
+        for (int i = 0, len = value.length(); i < len; i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\n':
+                    target.append("%0A");
+                    break;
+                case '\r':
+                    target.append("%0D");
+                    break;
+                case '"':
+                    target.append("%22");
+                    break;
+                default:
+                    target.append(c);
+                    break;
+            }
+        }
+        target.append('"');
+    }
+
     static final class RawPart extends ParameterHandler<MultipartBody.Part> {
         static final RawPart INSTANCE = new RawPart();
 
@@ -306,7 +435,9 @@ abstract class ParameterHandler<T> {
                             "Part map contained null value for key '" + entryKey + "'.");
                 }
 
-                Headers headers = Headers.of(
+                Headers headers = entryValue instanceof File
+                        ? fileHeaders(entryKey, (File) entryValue, transferEncoding)
+                        : Headers.of(
                         "Content-Disposition", "form-data; name=\"" + entryKey + "\"",
                         "Content-Transfer-Encoding", transferEncoding);
 
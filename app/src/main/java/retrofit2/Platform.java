@@ -19,8 +19,12 @@ import android.os.Build;
 import android.os.Handler;
 import android.os.Looper;
 
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 
 /**
  * 平台获取
@@ -47,6 +51,12 @@ class Platform {
             }
         } catch (ClassNotFoundException ignored) {
         }
+        if (Boolean.getBoolean(VirtualThreads.PROPERTY)) {
+            Executor virtualThreadExecutor = VirtualThreads.newExecutor();
+            if (virtualThreadExecutor != null) {
+                return new VirtualThreads(virtualThreadExecutor);
+            }
+        }
 //    try {
 //      Class.forName("java.util.Optional");
 //      return new Java8();
@@ -66,6 +76,18 @@ class Platform {
         return DefaultCallAdapterFactory.INSTANCE;
     }
 
+    /**
+     * The call adapter factories added after the user's ones by {@link Retrofit.Builder#build}.
+     */
+    List<CallAdapter.Factory> defaultCallAdapterFactories(Executor callbackExecutor) {
+        return Arrays.asList(defaultCallAdapterFactory(callbackExecutor),
+                new FutureCallAdapterFactory(null, callbackExecutor));
+    }
+
+    int defaultCallAdapterFactoriesSize() {
+        return 2;
+    }
+
     boolean isDefaultMethod(Method method) {
         return false;
     }
@@ -94,6 +116,48 @@ class Platform {
 //    }
 //  }
 
+    /**
+     * A JVM with virtual threads (Java 21+), used only when the system property
+     * {@value #PROPERTY} is {@code true}. {@code Future} service methods run
+     * {@link Call#execute} on a new virtual thread per call instead of holding a thread of the
+     * OkHttp dispatcher, so the number of calls in flight is not bounded by a thread pool.
+     * <p>
+     * This is opt-in because such calls bypass the {@code Dispatcher} and with it the
+     * {@code maxRequests} and {@code maxRequestsPerHost} limits.
+     * <p>
+     * 支持虚拟线程的JVM：返回Future的方法在每个请求各自的虚拟线程中同步执行，需要显式开启
+     */
+    static class VirtualThreads extends Platform {
+        static final String PROPERTY = "retrofit2.virtualThreads";
+
+        private final Executor executor;
+
+        VirtualThreads(Executor executor) {
+            this.executor = executor;
+        }
+
+        /**
+         * Returns an executor which starts a virtual thread per task, or null if this JVM has no
+         * virtual threads. Looked up reflectively because this code is compiled for Java 7.
+         */
+        static Executor newExecutor() {
+            try {
+                Method method = Executors.class
+                        .getMethod("newVirtualThreadPerTaskExecutor");
+                return (Executor) method.invoke(null);
+            } catch (NoSuchMethodException | IllegalAccessException
+                    | InvocationTargetException ignored) {
+                return null;
+            }
+        }
+
+        @Override
+        List<CallAdapter.Factory> defaultCallAdapterFactories(Executor callbackExecutor) {
+            return Arrays.asList(defaultCallAdapterFactory(callbackExecutor),
+                    new FutureCallAdapterFactory(executor, callbackExecutor));
+        }
+    }
+
     /**
      * Android 平台
      */
@@ -17,27 +17,45 @@ package retrofit2;
 
 import java.io.IOException;
 
-import okhttp3.FormBody;
 import okhttp3.Headers;
 import okhttp3.HttpUrl;
 import okhttp3.MediaType;
 import okhttp3.MultipartBody;
 import okhttp3.Request;
 import okhttp3.RequestBody;
-import okio.Buffer;
 import okio.BufferedSink;
 
 import static retrofit2.Utils.checkNotNull;
 
 final class RequestBuilder {
-    private static final char[] HEX_DIGITS =
+    static final char[] HEX_DIGITS =
             {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'A', 'B', 'C', 'D', 'E', 'F'};
     private static final String PATH_SEGMENT_ALWAYS_ENCODE_SET = " \"<>^`{}|\\?#";
+    // 下标为ASCII字符，true表示在path中总是需要编码
+    private static final boolean[] PATH_SEGMENT_ALWAYS_ENCODE = new boolean[0x80];
+
+    static {
+        for (int c = 0; c < 0x20; c++) {
+            PATH_SEGMENT_ALWAYS_ENCODE[c] = true;
+        }
+        PATH_SEGMENT_ALWAYS_ENCODE[0x7f] = true;
+        for (int i = 0; i < PATH_SEGMENT_ALWAYS_ENCODE_SET.length(); i++) {
+            PATH_SEGMENT_ALWAYS_ENCODE[PATH_SEGMENT_ALWAYS_ENCODE_SET.charAt(i)] = true;
+        }
+    }
 
     private final String method;
 
     private final HttpUrl baseUrl;
-    // 替换{name}后的url地址
+    // 预编译的url模板，@Url 请求时为null
+    private final UrlTemplate relativeUrlTemplate;
+    // baseUrl与模板中不变的前缀合并后的url，为null时走baseUrl.resolve
+    private final HttpUrl relativeUrlPrefix;
+    // 模板中每个{name}对应的值，填充模板时才编码
+    private final String[] pathValues;
+    // pathValues中的值是否已经编码
+    private final boolean[] pathValuesEncoded;
+    // 填充模板后的url地址，或者@Url 设置的地址
     private String relativeUrl;
     // 在这里边添加的请求参数
     private HttpUrl.Builder urlBuilder;
@@ -47,14 +65,22 @@ final class RequestBuilder {
 
     private final boolean hasBody;
     private MultipartBody.Builder multipartBuilder;
-    private FormBody.Builder formBuilder;
+    private FormBodyEncoder formEncoder;
     private RequestBody body;
 
-    RequestBuilder(String method, HttpUrl baseUrl, String relativeUrl, Headers headers,
-                   MediaType contentType, boolean hasBody, boolean isFormEncoded, boolean isMultipart) {
+    RequestBuilder(String method, HttpUrl baseUrl, UrlTemplate relativeUrlTemplate,
+                   HttpUrl relativeUrlPrefix, Headers headers, MediaType contentType, boolean hasBody,
+                   boolean isFormEncoded, boolean isMultipart, boolean pooledFormBody) {
         this.method = method;
         this.baseUrl = baseUrl;
-        this.relativeUrl = relativeUrl;
+        this.relativeUrlTemplate = relativeUrlTemplate;
+        this.relativeUrlPrefix = relativeUrlPrefix;
+        this.pathValues = relativeUrlTemplate != null
+                ? new String[relativeUrlTemplate.nameCount()]
+                : null;
+        this.pathValuesEncoded = relativeUrlTemplate != null
+                ? new boolean[relativeUrlTemplate.nameCount()]
+                : null;
         this.requestBuilder = new Request.Builder();
         this.contentType = contentType;
         this.hasBody = hasBody;
@@ -65,7 +91,7 @@ final class RequestBuilder {
 
         if (isFormEncoded) {
             // Will be set to 'body' in 'build'.
-            formBuilder = new FormBody.Builder();
+            formEncoder = new FormBodyEncoder(pooledFormBody);
         } else if (isMultipart) {
             // Will be set to 'body' in 'build'.
             multipartBuilder = new MultipartBody.Builder();
@@ -91,70 +117,115 @@ final class RequestBuilder {
     }
 
     /**
-     * 替换{value}内容
+     * 填充模板中{value}对应的slot，真正拼接url在第一次添加query参数或者build时进行
      *
-     * @param name
+     * @param index   name在url模板中的下标
      * @param value
      * @param encoded
      */
-    void addPathParam(String name, String value, boolean encoded) {
-        if (relativeUrl == null) {
-            // The relative URL is cleared when the first query parameter is set.
+    void addPathParam(int index, String value, boolean encoded) {
+        if (relativeUrlTemplate == null || urlBuilder != null) {
+            // The relative URL is expanded when the first query parameter is set.
             throw new AssertionError();
         }
-        //  替换{name}后的url地址
-        relativeUrl = relativeUrl.replace("{" + name + "}", canonicalizeForPath(value, encoded));
+        pathValues[index] = value;
+        pathValuesEncoded[index] = encoded;
     }
 
-    private static String canonicalizeForPath(String input, boolean alreadyEncoded) {
-        int codePoint;
-        for (int i = 0, limit = input.length(); i < limit; i += Character.charCount(codePoint)) {
-            codePoint = input.codePointAt(i);
-            if (codePoint < 0x20 || codePoint >= 0x7f
-                    || PATH_SEGMENT_ALWAYS_ENCODE_SET.indexOf(codePoint) != -1
-                    || (!alreadyEncoded && (codePoint == '/' || codePoint == '%'))) {
-                // Slow path: the character at i requires encoding!
-                Buffer out = new Buffer();
-                out.writeUtf8(input, 0, i);
-                canonicalizeForPath(out, input, i, limit, alreadyEncoded);
-                return out.readUtf8();
-            }
+    /**
+     * 一次性将模板中所有的slot填充，得到相对url地址
+     */
+    private String relativeUrl() {
+        if (relativeUrl == null && relativeUrlTemplate != null) {
+            relativeUrl = relativeUrlTemplate.expand(pathValues, pathValuesEncoded);
         }
+        return relativeUrl;
+    }
 
-        // Fast path: no characters required encoding.
-        return input;
+    /**
+     * Appends the dynamic part of the template to the pre-resolved prefix without re-parsing the
+     * whole URL. Returns null if the URL must be resolved against the base URL instead.
+     * <p>
+     * 只对模板中变化的部分编码追加，不用每次重新解析整个url
+     */
+    private HttpUrl.Builder prefixedUrlBuilder() {
+        if (relativeUrlPrefix == null) {
+            return null;
+        }
+        int prefixLength = relativeUrlTemplate.staticPrefixLength();
+        String path = relativeUrlTemplate.expand(pathValues, pathValuesEncoded, prefixLength);
+        if (path.isEmpty()) {
+            return relativeUrlPrefix.newBuilder();
+        }
+        if (prefixLength == 0 && path.charAt(0) == '/') {
+            // An empty leading value turned the relative path into an absolute one.
+            return null;
+        }
+        return relativeUrlPrefix.newBuilder().addEncodedPathSegments(path);
     }
 
-    private static void canonicalizeForPath(Buffer out, String input, int pos, int limit,
-                                            boolean alreadyEncoded) {
-        Buffer utf8Buffer = null; // Lazily allocated.
+    /**
+     * Appends {@code input} to {@code out} as a path segment, percent-encoding the UTF-8 bytes of
+     * each character which may not appear in a path. Writing straight into the URL being assembled
+     * avoids an intermediate buffer and string per encoded value.
+     */
+    static void canonicalizeForPath(StringBuilder out, String input, boolean alreadyEncoded) {
+        int limit = input.length();
+
+        // Fast path: copy the leading run of characters which need no encoding in one go.
+        int i = 0;
+        while (i < limit && !needsEncoding(input.charAt(i), alreadyEncoded)) {
+            i++;
+        }
+        out.append(input, 0, i);
+
         int codePoint;
-        for (int i = pos; i < limit; i += Character.charCount(codePoint)) {
+        for (; i < limit; i += Character.charCount(codePoint)) {
             codePoint = input.codePointAt(i);
             if (alreadyEncoded
                     && (codePoint == '\t' || codePoint == '\n' || codePoint == '\f' || codePoint == '\r')) {
                 // Skip this character.
-            } else if (codePoint < 0x20 || codePoint >= 0x7f
-                    || PATH_SEGMENT_ALWAYS_ENCODE_SET.indexOf(codePoint) != -1
-                    || (!alreadyEncoded && (codePoint == '/' || codePoint == '%'))) {
+            } else if (needsEncoding(codePoint, alreadyEncoded)) {
                 // Percent encode this character.
-                if (utf8Buffer == null) {
-                    utf8Buffer = new Buffer();
-                }
-                utf8Buffer.writeUtf8CodePoint(codePoint);
-                while (!utf8Buffer.exhausted()) {
-                    int b = utf8Buffer.readByte() & 0xff;
-                    out.writeByte('%');
-                    out.writeByte(HEX_DIGITS[(b >> 4) & 0xf]);
-                    out.writeByte(HEX_DIGITS[b & 0xf]);
-                }
+                percentEncodeUtf8(out, codePoint);
             } else {
                 // This character doesn't need encoding. Just copy it over.
-                out.writeUtf8CodePoint(codePoint);
+                out.append((char) codePoint);
             }
         }
     }
 
+    private static boolean needsEncoding(int codePoint, boolean alreadyEncoded) {
+        if (codePoint >= 0x80) return true;
+        return PATH_SEGMENT_ALWAYS_ENCODE[codePoint]
+                || (!alreadyEncoded && (codePoint == '/' || codePoint == '%'));
+    }
+
+    static void percentEncodeUtf8(StringBuilder out, int codePoint) {
+        if (codePoint < 0x80) {
+            percentEncode(out, codePoint);
+        } else if (codePoint < 0x800) {
+            percentEncode(out, 0xc0 | (codePoint >> 6));
+            percentEncode(out, 0x80 | (codePoint & 0x3f));
+        } else if (codePoint >= 0xd800 && codePoint <= 0xdfff) {
+            // A lone surrogate has no UTF-8 encoding; okio writes '?' in its place.
+            percentEncode(out, '?');
+        } else if (codePoint < 0x10000) {
+            percentEncode(out, 0xe0 | (codePoint >> 12));
+            percentEncode(out, 0x80 | ((codePoint >> 6) & 0x3f));
+            percentEncode(out, 0x80 | (codePoint & 0x3f));
+        } else {
+            percentEncode(out, 0xf0 | (codePoint >> 18));
+            percentEncode(out, 0x80 | ((codePoint >> 12) & 0x3f));
+            percentEncode(out, 0x80 | ((codePoint >> 6) & 0x3f));
+            percentEncode(out, 0x80 | (codePoint & 0x3f));
+        }
+    }
+
+    static void percentEncode(StringBuilder out, int b) {
+        out.append('%').append(HEX_DIGITS[(b >> 4) & 0xf]).append(HEX_DIGITS[b & 0xf]);
+    }
+
     /**
      * 添加请求参数
      *
@@ -163,14 +234,17 @@ final class RequestBuilder {
      * @param encoded
      */
     void addQueryParam(String name, String value, boolean encoded) {
-        if (relativeUrl != null) {
+        if (urlBuilder == null) {
             // Do a one-time combination of the built relative URL and the base URL.
-            urlBuilder = baseUrl.newBuilder(relativeUrl);
+            urlBuilder = prefixedUrlBuilder();
             if (urlBuilder == null) {
-                throw new IllegalArgumentException(
-                        "Malformed URL. Base: " + baseUrl + ", Relative: " + relativeUrl);
+                String relativeUrl = relativeUrl();
+                urlBuilder = baseUrl.newBuilder(relativeUrl);
+                if (urlBuilder == null) {
+                    throw new IllegalArgumentException(
+                            "Malformed URL. Base: " + baseUrl + ", Relative: " + relativeUrl);
+                }
             }
-            relativeUrl = null;
         }
 
         if (encoded) {
@@ -181,11 +255,7 @@ final class RequestBuilder {
     }
 
     void addFormField(String name, String value, boolean encoded) {
-        if (encoded) {
-            formBuilder.addEncoded(name, value);
-        } else {
-            formBuilder.add(name, value);
-        }
+        formEncoder.add(name, value, encoded);
     }
 
     void addPart(Headers headers, RequestBody body) {
@@ -205,8 +275,14 @@ final class RequestBuilder {
         HttpUrl.Builder urlBuilder = this.urlBuilder;
         if (urlBuilder != null) {
             url = urlBuilder.build();
+        } else if (relativeUrlPrefix != null && relativeUrlTemplate.isStatic()) {
+            // The whole URL is static and was resolved once up front.
+            url = relativeUrlPrefix;
+        } else if ((urlBuilder = prefixedUrlBuilder()) != null) {
+            url = urlBuilder.build();
         } else {
             // No query parameters triggered builder creation, just combine the relative URL and base URL.
+            String relativeUrl = relativeUrl();
             url = baseUrl.resolve(relativeUrl);
             if (url == null) {
                 throw new IllegalArgumentException(
@@ -217,8 +293,8 @@ final class RequestBuilder {
         RequestBody body = this.body;
         if (body == null) {
             // Try to pull from one of the builders.
-            if (formBuilder != null) {
-                body = formBuilder.build();
+            if (formEncoder != null) {
+                body = formEncoder.build();
             } else if (multipartBuilder != null) {
                 body = multipartBuilder.build();
             } else if (hasBody) {
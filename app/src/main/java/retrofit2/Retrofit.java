@@ -15,16 +15,26 @@
  */
 package retrofit2;
 
+import java.io.File;
 import java.lang.annotation.Annotation;
-import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import okhttp3.HttpUrl;
 import okhttp3.OkHttpClient;
@@ -60,6 +70,18 @@ import static retrofit2.Utils.checkNotNull;
 public final class Retrofit {
     // key method; value servicemethod
     private final Map<Method, ServiceMethod<?, ?>> serviceMethodCache = new ConcurrentHashMap<>();
+    // 正在解析中的ServiceMethod，同一个method的调用者等待同一个任务，不同的method互不影响
+    private final ConcurrentHashMap<Method, ServiceMethodTask> pendingServiceMethods =
+            new ConcurrentHashMap<>();
+    // 编译期生成的注解解析结果，有的话构建ServiceMethod时不再解析方法注解
+    private final Map<Method, ServiceMethodSpec> serviceMethodSpecs = new ConcurrentHashMap<>();
+    // 本地缓存中已经是最新的接口，不需要再写入
+    private final Set<Class<?>> snapshotServices =
+            Collections.newSetFromMap(new ConcurrentHashMap<Class<?>, Boolean>());
+    // 已经查找过的Converter，相同参数类型和注解的method共用同一个Converter
+    private final Map<ConverterKey, Converter<?, ?>> converterCache = new ConcurrentHashMap<>();
+    // 类型解析结果的缓存，ServiceMethod.Builder使用
+    final TypeCache typeCache = new TypeCache();
 
     // 该接口直接实现类为OkHttpClient {@link #build()} callFactory = new OkHttpClient();
     final okhttp3.Call.Factory callFactory;
@@ -73,6 +95,16 @@ public final class Retrofit {
     final Executor callbackExecutor;
     // 暂时理解为懒加载的意思，如果为true则把所有的methond都进行反射，如果为false则用到哪个method再去反射。
     final boolean validateEagerly;
+    // 不为null时，create()在该线程池中并行解析API中所有的method
+    final Executor warmUpExecutor;
+    // 后台解析全部完成时的回调，可以为null
+    final WarmUpListener warmUpListener;
+    // 注解解析结果的本地缓存，可以为null
+    final ServiceMethodSnapshot snapshot;
+    // 非2xx应答的错误消息体的处理方式
+    final ErrorBodyPolicy errorBodyPolicy;
+    // @FormUrlEncoded 请求体是否直接编码写入okio Buffer，而不是生成FormBody
+    final boolean pooledFormBodies;
 
     /**
      * @param callFactory        // Retrofit的对应使用平台
@@ -81,16 +113,28 @@ public final class Retrofit {
      * @param adapterFactories
      * @param callbackExecutor   // Android 为post到主线程的Executor
      * @param validateEagerly
+     * @param warmUpExecutor     // 后台并行解析method的线程池
+     * @param warmUpListener
+     * @param snapshot           // 注解解析结果的本地缓存
+     * @param errorBodyPolicy
+     * @param pooledFormBodies
      */
     Retrofit(okhttp3.Call.Factory callFactory, HttpUrl baseUrl,
              List<Converter.Factory> converterFactories, List<CallAdapter.Factory> adapterFactories,
-             Executor callbackExecutor, boolean validateEagerly) {
+             Executor callbackExecutor, boolean validateEagerly, Executor warmUpExecutor,
+             WarmUpListener warmUpListener, ServiceMethodSnapshot snapshot,
+             ErrorBodyPolicy errorBodyPolicy, boolean pooledFormBodies) {
         this.callFactory = callFactory;
         this.baseUrl = baseUrl;
         this.converterFactories = unmodifiableList(converterFactories); // Defensive copy at call site.
         this.adapterFactories = unmodifiableList(adapterFactories); // Defensive copy at call site.
         this.callbackExecutor = callbackExecutor;
         this.validateEagerly = validateEagerly;
+        this.warmUpExecutor = warmUpExecutor;
+        this.warmUpListener = warmUpListener;
+        this.snapshot = snapshot;
+        this.errorBodyPolicy = errorBodyPolicy;
+        this.pooledFormBodies = pooledFormBodies;
     }
 
     /**
@@ -138,48 +182,103 @@ public final class Retrofit {
      *   Call&lt;List&lt;Item&gt;&gt; categoryList(@Path("cat") String a, @Query("page") int b);
      * }
      * </pre>
+     * <p>
+     * If the retrofit-compiler annotation processor generated an implementation of
+     * {@code service}, that implementation is returned instead of a dynamic proxy. See
+     * {@link GeneratedService}.
      */
     @SuppressWarnings("unchecked") // Single-interface proxy creation guarded by parameter safety.
     public <T> T create(final Class<T> service) {
         //确保API是一个接口，且该接口没有继承其他接口
         Utils.validateServiceInterface(service);
+        // 编译期生成的实现类，同时注册了每个method的注解解析结果
+        T generated = newGeneratedService(service);
+        if (snapshot != null) {
+            if (generated != null) {
+                // 生成的代码里已经有解析结果，不需要写入本地缓存
+                snapshotServices.add(service);
+            } else {
+                loadSnapshot(service);
+            }
+        }
         // 懒加载，如果true则会把API里面的所有method都进行一次性缓存。
         if (validateEagerly) {
             eagerlyValidateMethods(service);
+        } else if (warmUpExecutor != null) {
+            // 不阻塞当前线程，在后台并行解析所有的method
+            warmUpMethods(service);
+        }
+        if (generated != null) {
+            return generated;
         }
 
         // 返回一个ApiGitHub的动态代理对象
-        return (T) Proxy.newProxyInstance(
-                //
-                service.getClassLoader(),
-                //
-                new Class<?>[]{service},
-                //
-                new InvocationHandler() {
-                    // Android 平台
-                    private final Platform platform = Platform.get();
-
-                    @Override
-                    public Object invoke(Object proxy, Method method, Object[] args)
-                            throws Throwable {
-                        // 出错的情况
-                        // If the method is a method from Object then defer to normal invocation.
-                        if (method.getDeclaringClass() == Object.class) {
-                            return method.invoke(this, args);
-                        }
-                        //android平台返回的是false，不管它
-                        if (platform.isDefaultMethod(method)) {
-                            return platform.invokeDefaultMethod(method, service, proxy, args);
-                        }
-                        // API中每个方法都会生成对应的一个ServiceMethod，解析该方法对应的Annotation信息。
-                        ServiceMethod<Object, Object> serviceMethod =
-                                (ServiceMethod<Object, Object>) loadServiceMethod(method);
-                        //他就是okhttp3.Call的一个包装类，真正的网络请求在这里面进行，且是通过okhttp3.Call进行的。
-                        OkHttpCall<Object> okHttpCall = new OkHttpCall<>(serviceMethod, args);
-                        //返回该API中method的返回类型，例如Call<Rep>  (默认ExecutorCallAdapterFactory.apapt)
-                        return serviceMethod.callAdapter.adapt(okHttpCall);
-                    }
-                });
+        return (T) Proxy.newProxyInstance(service.getClassLoader(), new Class<?>[]{service},
+                new ServiceInvocationHandler(this, service));
+    }
+
+    /**
+     * Returns a new instance of the {@link GeneratedService} written for {@code service} by the
+     * retrofit-compiler annotation processor, or null if there is none.
+     */
+    private <T> T newGeneratedService(Class<T> service) {
+        String name = service.getName().replace('$', '_') + GeneratedService.SUFFIX;
+        Class<?> generatedClass;
+        try {
+            generatedClass = Class.forName(name, true, service.getClassLoader());
+        } catch (ClassNotFoundException e) {
+            // 没有使用annotationProcessor，走动态代理
+            return null;
+        }
+        try {
+            return service.cast(generatedClass.getConstructor(Retrofit.class).newInstance(this));
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new RuntimeException("Unable to create " + name, cause);
+        } catch (ReflectiveOperationException e) {
+            throw new RuntimeException("Unable to create " + name, e);
+        }
+    }
+
+    /**
+     * Records the annotation metadata generated at compile time for {@code method}.
+     */
+    void registerServiceMethodSpec(Method method, ServiceMethodSpec spec) {
+        serviceMethodSpecs.put(method, spec);
+    }
+
+    /**
+     * Registers the specs of {@code service} from the snapshot file, if it has a current entry.
+     */
+    private void loadSnapshot(Class<?> service) {
+        if (snapshotServices.contains(service)) return;
+        Map<Method, ServiceMethodSpec> specs = snapshot.load(service);
+        if (specs == null) return;
+        serviceMethodSpecs.putAll(specs);
+        snapshotServices.add(service);
+    }
+
+    /**
+     * Writes the specs of {@code service} to the snapshot file once all of its methods are built.
+     */
+    private void saveSnapshot(Class<?> service) {
+        if (snapshotServices.contains(service)) return;
+        Map<Method, ServiceMethodSpec> specs = new LinkedHashMap<>();
+        Platform platform = Platform.get();
+        for (Method method : service.getDeclaredMethods()) {
+            if (platform.isDefaultMethod(method)) continue;
+            ServiceMethod<?, ?> serviceMethod = serviceMethodCache.get(method);
+            if (serviceMethod == null) {
+                // 还有method没有解析
+                return;
+            }
+            specs.put(method, serviceMethod.spec);
+        }
+        if (snapshotServices.add(service)) {
+            snapshot.save(service, specs);
+        }
     }
 
     /**
@@ -199,6 +298,70 @@ public final class Retrofit {
         }
     }
 
+    /**
+     * 在warmUpExecutor中并行解析API中所有的方法，全部完成后回调warmUpListener
+     *
+     * @param service
+     */
+    private void warmUpMethods(final Class<?> service) {
+        final long startNanos = System.nanoTime();
+        Platform platform = Platform.get();
+        List<ServiceMethodTask> tasks = new ArrayList<>();
+        int methodCount = 0;
+        for (Method method : service.getDeclaredMethods()) {
+            if (platform.isDefaultMethod(method)) continue;
+            methodCount++;
+            ServiceMethodTask task = serviceMethodTask(method);
+            if (task != null) {
+                tasks.add(task);
+            }
+        }
+
+        final int total = methodCount;
+        final AtomicInteger remaining = new AtomicInteger(tasks.size());
+        final AtomicInteger failures = new AtomicInteger();
+        if (tasks.isEmpty()) {
+            notifyWarmUpFinished(service, total, 0, startNanos);
+            return;
+        }
+        for (final ServiceMethodTask task : tasks) {
+            Runnable runnable = new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        // 如果调用者已经在解析该method，这里等待它完成
+                        task.run();
+                        task.getUninterruptibly();
+                    } catch (Throwable t) {
+                        // Reported again by the first call to this method.
+                        failures.incrementAndGet();
+                    } finally {
+                        if (remaining.decrementAndGet() == 0) {
+                            notifyWarmUpFinished(service, total, failures.get(), startNanos);
+                        }
+                    }
+                }
+            };
+            try {
+                warmUpExecutor.execute(runnable);
+            } catch (RejectedExecutionException e) {
+                // Left pending; the first call to this method will build it instead.
+                failures.incrementAndGet();
+                if (remaining.decrementAndGet() == 0) {
+                    notifyWarmUpFinished(service, total, failures.get(), startNanos);
+                }
+            }
+        }
+    }
+
+    private void notifyWarmUpFinished(Class<?> service, int methodCount, int failureCount,
+                                      long startNanos) {
+        if (warmUpListener != null) {
+            warmUpListener.onWarmUpFinished(service, methodCount, failureCount,
+                    System.nanoTime() - startNanos);
+        }
+    }
+
     /**
      * API中每个方法都会生成对应的一个ServiceMethod，解析该方法对应的Annotation信息。
      *
@@ -209,16 +372,87 @@ public final class Retrofit {
         // 第一次取serviceMethodCache，应该为null
         ServiceMethod<?, ?> result = serviceMethodCache.get(method);
         if (result != null) return result;
-        // 锁定serviceMethodCache
-        synchronized (serviceMethodCache) {
-            result = serviceMethodCache.get(method);
-            if (result == null) {
-                // 创建一个ServiceMethod
-                result = new ServiceMethod.Builder<>(this, method).build();
-                serviceMethodCache.put(method, result);
+
+        ServiceMethodTask task = serviceMethodTask(method);
+        if (task == null) {
+            return serviceMethodCache.get(method);
+        }
+        // FutureTask只会执行一次：如果其他线程已经在解析该method，这里直接返回，在get()中等待结果
+        task.run();
+        return task.getUninterruptibly();
+    }
+
+    /**
+     * Returns the task which builds the service method for {@code method}, registering a new one
+     * if none is pending, or null if the method is already in the cache.
+     */
+    private ServiceMethodTask serviceMethodTask(Method method) {
+        ServiceMethodTask task = pendingServiceMethods.get(method);
+        if (task != null) return task;
+
+        ServiceMethodTask newTask = new ServiceMethodTask(method);
+        task = pendingServiceMethods.putIfAbsent(method, newTask);
+        if (task != null) return task;
+
+        // The previous task may have completed between the cache miss and registering ours.
+        if (serviceMethodCache.containsKey(method)) {
+            pendingServiceMethods.remove(method, newTask);
+            return null;
+        }
+        return newTask;
+    }
+
+    /**
+     * Builds one {@link ServiceMethod} at most once. Concurrent callers for the same method share
+     * the result (or the failure); a failed build is forgotten so the next call tries again.
+     */
+    private final class ServiceMethodTask extends FutureTask<ServiceMethod<?, ?>> {
+        private final Method method;
+
+        ServiceMethodTask(final Method method) {
+            super(new Callable<ServiceMethod<?, ?>>() {
+                @Override
+                public ServiceMethod<?, ?> call() {
+                    // 创建一个ServiceMethod
+                    ServiceMethod<?, ?> result = new ServiceMethod.Builder<>(
+                            Retrofit.this, method, serviceMethodSpecs.get(method)).build();
+                    serviceMethodCache.put(method, result);
+                    if (snapshot != null) {
+                        saveSnapshot(method.getDeclaringClass());
+                    }
+                    return result;
+                }
+            });
+            this.method = method;
+        }
+
+        @Override
+        protected void done() {
+            // The result (if any) is already in serviceMethodCache.
+            pendingServiceMethods.remove(method, this);
+        }
+
+        ServiceMethod<?, ?> getUninterruptibly() {
+            boolean interrupted = false;
+            try {
+                while (true) {
+                    try {
+                        return get();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+                if (cause instanceof Error) throw (Error) cause;
+                throw new RuntimeException(cause);
+            } finally {
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
             }
         }
-        return result;
     }
 
     /**
@@ -244,6 +478,21 @@ public final class Retrofit {
         return adapterFactories;
     }
 
+    /**
+     * How the body of a non-2xx response is read before it becomes {@link Response#errorBody()}.
+     */
+    public ErrorBodyPolicy errorBodyPolicy() {
+        return errorBodyPolicy;
+    }
+
+    /**
+     * True if {@code @FormUrlEncoded} request bodies are encoded into a pooled buffer rather than
+     * built as {@link okhttp3.FormBody}.
+     */
+    public boolean pooledFormBodies() {
+        return pooledFormBodies;
+    }
+
 
     /**
      * * Returns the {@link CallAdapter} for {@code returnType} from the available {@linkplain
@@ -333,12 +582,21 @@ public final class Retrofit {
         checkNotNull(parameterAnnotations, "parameterAnnotations == null");
         checkNotNull(methodAnnotations, "methodAnnotations == null");
 
+        ConverterKey key = new ConverterKey(ConverterKey.REQUEST_BODY, skipPast, type,
+                parameterAnnotations, methodAnnotations);
+        Converter<?, ?> cached = converterCache.get(key);
+        if (cached != null) {
+            //noinspection unchecked
+            return (Converter<T, RequestBody>) cached;
+        }
+
         int start = converterFactories.indexOf(skipPast) + 1;
         for (int i = start, count = converterFactories.size(); i < count; i++) {
             Converter.Factory factory = converterFactories.get(i);
             Converter<?, RequestBody> converter =
                     factory.requestBodyConverter(type, parameterAnnotations, methodAnnotations, this);
             if (converter != null) {
+                converterCache.put(key, converter);
                 //noinspection unchecked
                 return (Converter<T, RequestBody>) converter;
             }
@@ -391,11 +649,20 @@ public final class Retrofit {
         checkNotNull(type, "type == null");
         checkNotNull(annotations, "annotations == null");
 
+        ConverterKey key = new ConverterKey(ConverterKey.RESPONSE_BODY, skipPast, type,
+                annotations, null);
+        Converter<?, ?> cached = converterCache.get(key);
+        if (cached != null) {
+            //noinspection unchecked
+            return (Converter<ResponseBody, T>) cached;
+        }
+
         int start = converterFactories.indexOf(skipPast) + 1;
         for (int i = start, count = converterFactories.size(); i < count; i++) {
             Converter<ResponseBody, ?> converter =
                     converterFactories.get(i).responseBodyConverter(type, annotations, this);
             if (converter != null) {
+                converterCache.put(key, converter);
                 //noinspection unchecked
                 return (Converter<ResponseBody, T>) converter;
             }
@@ -427,18 +694,74 @@ public final class Retrofit {
         checkNotNull(type, "type == null");
         checkNotNull(annotations, "annotations == null");
 
-        for (int i = 0, count = converterFactories.size(); i < count; i++) {
-            Converter<?, String> converter =
-                    converterFactories.get(i).stringConverter(type, annotations, this);
-            if (converter != null) {
-                //noinspection unchecked
-                return (Converter<T, String>) converter;
+        ConverterKey key = new ConverterKey(ConverterKey.STRING, null, type, annotations, null);
+        Converter<?, ?> converter = converterCache.get(key);
+        if (converter == null) {
+            for (int i = 0, count = converterFactories.size(); i < count; i++) {
+                converter = converterFactories.get(i).stringConverter(type, annotations, this);
+                if (converter != null) break;
+            }
+            if (converter == null) {
+                // Nothing matched. Resort to default converter which just calls toString().
+                converter = BuiltInConverters.ToStringConverter.INSTANCE;
             }
+            converterCache.put(key, converter);
         }
-
-        // Nothing matched. Resort to default converter which just calls toString().
         //noinspection unchecked
-        return (Converter<T, String>) BuiltInConverters.ToStringConverter.INSTANCE;
+        return (Converter<T, String>) converter;
+    }
+
+    /**
+     * Identifies one converter lookup. Converters are expected to be stateless, so two lookups with
+     * equal types and annotations can share the converter the first one found. Annotations compare
+     * by value, as {@link Annotation#equals} defines.
+     */
+    private static final class ConverterKey {
+        static final int REQUEST_BODY = 0;
+        static final int RESPONSE_BODY = 1;
+        static final int STRING = 2;
+
+        private final int kind;
+        private final Converter.Factory skipPast;
+        private final Type type;
+        private final Annotation[] annotations;
+        // 只有RequestBody转换器才有，其他为null
+        private final Annotation[] methodAnnotations;
+        private final int hashCode;
+
+        ConverterKey(int kind, Converter.Factory skipPast, Type type, Annotation[] annotations,
+                     Annotation[] methodAnnotations) {
+            this.kind = kind;
+            this.skipPast = skipPast;
+            this.type = type;
+            this.annotations = annotations;
+            this.methodAnnotations = methodAnnotations;
+
+            int result = kind;
+            result = 31 * result + (skipPast != null ? skipPast.hashCode() : 0);
+            result = 31 * result + type.hashCode();
+            result = 31 * result + Arrays.hashCode(annotations);
+            result = 31 * result + Arrays.hashCode(methodAnnotations);
+            this.hashCode = result;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof ConverterKey)) return false;
+            ConverterKey other = (ConverterKey) o;
+            return hashCode == other.hashCode
+                    && kind == other.kind
+                    && skipPast == other.skipPast
+                    && Utils.equals(type, other.type)
+                    && Arrays.equals(annotations, other.annotations)
+                    && Arrays.equals(methodAnnotations, other.methodAnnotations);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
     }
 
     /**
@@ -453,6 +776,22 @@ public final class Retrofit {
         return new Builder(this);
     }
 
+    /**
+     * Notified when the background warm-up started by {@link #create} for a service interface has
+     * finished. See {@link Builder#warmUpExecutor(Executor)}.
+     */
+    public interface WarmUpListener {
+        /**
+         * Invoked on the warm-up executor once every method of {@code service} was parsed.
+         *
+         * @param methodCount  the number of service methods in {@code service}
+         * @param failureCount methods which failed to parse or were rejected by the executor. They
+         *                     are parsed again, and report their error, on first use.
+         * @param tookNanos    time from {@link #create} to the last method being parsed
+         */
+        void onWarmUpFinished(Class<?> service, int methodCount, int failureCount, long tookNanos);
+    }
+
     /**
      * Retrofit的建造者
      * <p>
@@ -476,7 +815,13 @@ public final class Retrofit {
         private Executor callbackExecutor;
         // 暂时理解为懒加载的意思，如果为true则把所有的methond都进行反射，如果为false则用到哪个method再去反射。
         private boolean validateEagerly;
-
+        // 后台并行解析method的线程池
+        private Executor warmUpExecutor;
+        private WarmUpListener warmUpListener;
+        // 注解解析结果的本地缓存
+        private ServiceMethodSnapshot snapshot;
+        private ErrorBodyPolicy errorBodyPolicy;
+        private boolean pooledFormBodies;
 
         /**
          * 构造方法
@@ -507,10 +852,17 @@ public final class Retrofit {
             // 数据转化
             converterFactories.addAll(retrofit.converterFactories);
             adapterFactories.addAll(retrofit.adapterFactories);
-            // Remove the default, platform-aware call adapter added by build().
-            adapterFactories.remove(adapterFactories.size() - 1);
+            // Remove the default, platform-aware call adapters added by build().
+            for (int i = platform.defaultCallAdapterFactoriesSize(); i > 0; i--) {
+                adapterFactories.remove(adapterFactories.size() - 1);
+            }
             callbackExecutor = retrofit.callbackExecutor;
             validateEagerly = retrofit.validateEagerly;
+            warmUpExecutor = retrofit.warmUpExecutor;
+            warmUpListener = retrofit.warmUpListener;
+            snapshot = retrofit.snapshot;
+            errorBodyPolicy = retrofit.errorBodyPolicy;
+            pooledFormBodies = retrofit.pooledFormBodies;
         }
 
         /**
@@ -648,6 +1000,74 @@ public final class Retrofit {
             return this;
         }
 
+        /**
+         * When calling {@link #create} on the resulting {@link Retrofit} instance, parse all methods
+         * of the supplied interface in parallel on {@code executor} instead of on first use.
+         * {@link #create} returns immediately; a call to a method which is still being parsed waits
+         * for that parse, or runs it itself if the executor has not started it yet.
+         * <p>
+         * Use a bounded executor: every method is submitted as its own task. Parse errors are not
+         * thrown by {@link #create} but by the first call to the failing method. This has no effect
+         * when {@link #validateEagerly} is enabled.
+         */
+        public Builder warmUpExecutor(Executor executor) {
+            this.warmUpExecutor = checkNotNull(executor, "executor == null");
+            return this;
+        }
+
+        /**
+         * Register a listener notified when the background warm-up of a service interface has
+         * finished, for example to record how long it took.
+         *
+         * @see #warmUpExecutor(Executor)
+         */
+        public Builder warmUpListener(WarmUpListener listener) {
+            this.warmUpListener = checkNotNull(listener, "listener == null");
+            return this;
+        }
+
+        /**
+         * Keep the parsed annotations of each service interface in {@code file} so that the next
+         * process can skip parsing them. A service is written, on a background thread, once
+         * every one of its methods has been used, which {@link #validateEagerly} or
+         * {@link #warmUpExecutor} ensure right away.
+         * <p>
+         * The file is only used by a process with the same {@code version}; an application's
+         * version code is a natural choice. Each service is also checked against a fingerprint of
+         * its methods and their annotations, so an interface edited without a new version is
+         * parsed again. Only the converter-independent metadata is stored; converters and call
+         * adapters are still looked up in every process.
+         */
+        public Builder serviceMethodSnapshot(File file, String version) {
+            this.snapshot = new ServiceMethodSnapshot(checkNotNull(file, "file == null"),
+                    checkNotNull(version, "version == null"));
+            return this;
+        }
+
+        /**
+         * Set how the body of a non-2xx response is read before it becomes
+         * {@link Response#errorBody()}, for example to cap the memory an oversized error page may
+         * take. Defaults to {@link ErrorBodyPolicy#buffer()}.
+         */
+        public Builder errorBodyPolicy(ErrorBodyPolicy policy) {
+            this.errorBodyPolicy = checkNotNull(policy, "policy == null");
+            return this;
+        }
+
+        /**
+         * When true, {@code @FormUrlEncoded} fields are percent-encoded straight into an okio
+         * {@link okio.Buffer} backed by okio's segment pool, and the request body's content length
+         * is the buffer's size. Writing the body shares the buffer's segments instead of encoding
+         * the fields again.
+         * <p>
+         * Such bodies are not {@link okhttp3.FormBody} instances, so interceptors which read
+         * fields through {@code FormBody} will not see them. Defaults to false.
+         */
+        public Builder pooledFormBodies(boolean enabled) {
+            this.pooledFormBodies = enabled;
+            return this;
+        }
+
         /**
          * Create the {@link Retrofit} instance using the configured values.
          * <p>
@@ -673,15 +1093,21 @@ public final class Retrofit {
             // 这里会默认添加一个适配器，这才能让API中的load方法返回Call<Rep>
             // Make a defensive copy of the adapters and add the default Call adapter.
             List<CallAdapter.Factory> adapterFactories = new ArrayList<>(this.adapterFactories);
-            //即加入ExecutorCallAdapterFactory
-            adapterFactories.add(platform.defaultCallAdapterFactory(callbackExecutor));
+            //即加入ExecutorCallAdapterFactory，以及返回Future的FutureCallAdapterFactory
+            adapterFactories.addAll(platform.defaultCallAdapterFactories(callbackExecutor));
+
+            ErrorBodyPolicy errorBodyPolicy = this.errorBodyPolicy;
+            if (errorBodyPolicy == null) {
+                errorBodyPolicy = ErrorBodyPolicy.buffer();
+            }
 
             // 没有给默认解析器，所以要自己定义一个解析器
             // Make a defensive copy of the converters.
             List<Converter.Factory> converterFactories = new ArrayList<>(this.converterFactories);
 
             return new Retrofit(callFactory, baseUrl, converterFactories, adapterFactories,
-                    callbackExecutor, validateEagerly);
+                    callbackExecutor, validateEagerly, warmUpExecutor, warmUpListener, snapshot,
+                    errorBodyPolicy, pooledFormBodies);
         }
     }
 }
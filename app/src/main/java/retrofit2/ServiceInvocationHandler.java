@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2017 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package retrofit2;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The {@link InvocationHandler} of the proxies returned by {@link Retrofit#create}. Every method
+ * the proxy can dispatch is bound once to an invoker, in a table keyed by {@link Method#equals}
+ * which is not modified after construction. The proxy passes its own copies of the
+ * {@link Method}s rather than the instances of {@link Class#getDeclaredMethods()}, so they can
+ * only be matched by equality. Services generated by retrofit-compiler skip the lookup and
+ * dispatch on the index of the method, see {@link GeneratedService}.
+ * <p>
+ * 动态代理的InvocationHandler：create时为每个method绑定一个invoker，调用时查表找到invoker
+ */
+final class ServiceInvocationHandler implements InvocationHandler {
+    private final Retrofit retrofit;
+    private final Class<?> service;
+    // key method; value 预先绑定的invoker，构造完成后不再修改
+    private final Map<Method, MethodInvoker> invokers;
+
+    ServiceInvocationHandler(Retrofit retrofit, Class<?> service) {
+        this.retrofit = retrofit;
+        this.service = service;
+
+        Platform platform = Platform.get();
+        Method[] serviceMethods = service.getDeclaredMethods();
+        Method[] objectMethods = Object.class.getMethods();
+        Map<Method, MethodInvoker> invokers =
+                new HashMap<>((serviceMethods.length + objectMethods.length) * 4 / 3 + 1);
+        // If the method is a method from Object then defer to normal invocation.
+        for (Method method : objectMethods) {
+            invokers.put(method, new ObjectMethodInvoker(method));
+        }
+        for (Method method : serviceMethods) {
+            //android平台isDefaultMethod返回的是false
+            MethodInvoker invoker = platform.isDefaultMethod(method)
+                    ? new DefaultMethodInvoker(platform, method)
+                    : new HttpMethodInvoker(method);
+            invokers.put(method, invoker);
+        }
+        this.invokers = invokers;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        MethodInvoker invoker = invokers.get(method);
+        if (invoker == null) {
+            // A proxy only dispatches methods of its interface and of Object.
+            throw new AssertionError("Unexpected method " + method);
+        }
+        return invoker.invoke(proxy, args);
+    }
+
+    private abstract static class MethodInvoker {
+        abstract Object invoke(Object proxy, Object[] args) throws Throwable;
+    }
+
+    /**
+     * equals、hashCode、toString，在handler上调用
+     */
+    private final class ObjectMethodInvoker extends MethodInvoker {
+        private final Method method;
+
+        ObjectMethodInvoker(Method method) {
+            this.method = method;
+        }
+
+        @Override
+        Object invoke(Object proxy, Object[] args) throws Throwable {
+            return method.invoke(ServiceInvocationHandler.this, args);
+        }
+    }
+
+    private final class DefaultMethodInvoker extends MethodInvoker {
+        private final Platform platform;
+        private final Method method;
+
+        DefaultMethodInvoker(Platform platform, Method method) {
+            this.platform = platform;
+            this.method = method;
+        }
+
+        @Override
+        Object invoke(Object proxy, Object[] args) throws Throwable {
+            return platform.invokeDefaultMethod(method, service, proxy, args);
+        }
+    }
+
+    /**
+     * API中的请求方法：第一次调用时绑定ServiceMethod，之后直接使用
+     */
+    private final class HttpMethodInvoker extends MethodInvoker {
+        private final Method method;
+        // ServiceMethod的字段都是final的，多线程下重复赋值也没有问题
+        private ServiceMethod<Object, Object> serviceMethod;
+
+        HttpMethodInvoker(Method method) {
+            this.method = method;
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        Object invoke(Object proxy, Object[] args) {
+            ServiceMethod<Object, Object> serviceMethod = this.serviceMethod;
+            if (serviceMethod == null) {
+                // API中每个方法都会生成对应的一个ServiceMethod，解析该方法对应的Annotation信息。
+                serviceMethod = (ServiceMethod<Object, Object>) retrofit.loadServiceMethod(method);
+                this.serviceMethod = serviceMethod;
+            }
+            //他就是okhttp3.Call的一个包装类，真正的网络请求在这里面进行，且是通过okhttp3.Call进行的。
+            OkHttpCall<Object> okHttpCall = new OkHttpCall<>(serviceMethod, args);
+            //返回该API中method的返回类型，例如Call<Rep>  (默认ExecutorCallAdapterFactory.apapt)
+            return serviceMethod.callAdapter.adapt(okHttpCall);
+        }
+    }
+}
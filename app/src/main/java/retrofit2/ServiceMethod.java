@@ -15,15 +15,14 @@
  */
 package retrofit2;
 
+import java.io.File;
 import java.io.IOException;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Method;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
 import java.net.URI;
-import java.util.LinkedHashSet;
 import java.util.Map;
-import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -73,31 +72,44 @@ final class ServiceMethod<R, T> {
     final okhttp3.Call.Factory callFactory;
     // 默认返回ExecutorCallAdapterFactory
     final CallAdapter<R, T> callAdapter;
+    // 非2xx应答的错误消息体的处理方式
+    final ErrorBodyPolicy errorBodyPolicy;
 
     private final HttpUrl baseUrl;
+    // 表单请求体是否直接写入okio Buffer
+    private final boolean pooledFormBody;
     private final Converter<ResponseBody, R> responseConverter;
     private final String httpMethod;
-    private final String relativeUrl;
+    // 预编译的url模板，@Url 请求时为null
+    private final UrlTemplate relativeUrlTemplate;
+    // baseUrl与模板中不变的前缀合并后的url，为null时每次请求走baseUrl.resolve
+    private final HttpUrl relativeUrlPrefix;
     private final Headers headers;
     private final MediaType contentType;
     private final boolean hasBody;
     private final boolean isFormEncoded;
     private final boolean isMultipart;
     private final ParameterHandler<?>[] parameterHandlers;
+    // 与Converter无关的注解解析结果，用于写入本地缓存
+    final ServiceMethodSpec spec;
 
     ServiceMethod(Builder<R, T> builder) {
         this.callFactory = builder.retrofit.callFactory();
         this.callAdapter = builder.callAdapter;
+        this.errorBodyPolicy = builder.retrofit.errorBodyPolicy();
         this.baseUrl = builder.retrofit.baseUrl();
+        this.pooledFormBody = builder.retrofit.pooledFormBodies();
         this.responseConverter = builder.responseConverter;
         this.httpMethod = builder.httpMethod;
-        this.relativeUrl = builder.relativeUrl;
+        this.relativeUrlTemplate = builder.relativeUrlTemplate;
+        this.relativeUrlPrefix = builder.relativeUrlPrefix;
         this.headers = builder.headers;
         this.contentType = builder.contentType;
         this.hasBody = builder.hasBody;
         this.isFormEncoded = builder.isFormEncoded;
         this.isMultipart = builder.isMultipart;
         this.parameterHandlers = builder.parameterHandlers;
+        this.spec = builder.spec;
     }
 
     /**
@@ -106,8 +118,8 @@ final class ServiceMethod<R, T> {
      * 生成OK http的
      */
     Request toRequest(Object... args) throws IOException {
-        RequestBuilder requestBuilder = new RequestBuilder(httpMethod, baseUrl, relativeUrl, headers,
-                contentType, hasBody, isFormEncoded, isMultipart);
+        RequestBuilder requestBuilder = new RequestBuilder(httpMethod, baseUrl, relativeUrlTemplate, relativeUrlPrefix, headers,
+                contentType, hasBody, isFormEncoded, isMultipart, pooledFormBody);
 
         @SuppressWarnings("unchecked") // It is an error to invoke a method with the wrong arg types.
                 ParameterHandler<Object>[] handlers = (ParameterHandler<Object>[]) parameterHandlers;
@@ -172,23 +184,41 @@ final class ServiceMethod<R, T> {
         Headers headers;
         // header中Content-Type
         MediaType contentType;
-        // 如果请求url地址中包含{ PARAM }
-        Set<String> relativeUrlParamNames;
+        // 预编译的url模板，{ PARAM } 对应模板中的slot
+        UrlTemplate relativeUrlTemplate;
+        // baseUrl与模板中不变的前缀合并后的url
+        HttpUrl relativeUrlPrefix;
         ParameterHandler<?>[] parameterHandlers;
         // 返回一个类型转换器
         Converter<ResponseBody, T> responseConverter;
         CallAdapter<T, R> callAdapter;
+        // 预先生成的注解解析结果，为null时通过反射解析注解，build后为解析的结果
+        ServiceMethodSpec spec;
 
         /**
          * @param retrofit retrofit对象
          * @param method   ApiGitHub中对应的方法
          */
         Builder(Retrofit retrofit, Method method) {
+            this(retrofit, method, null);
+        }
+
+        /**
+         * @param retrofit retrofit对象
+         * @param method   ApiGitHub中对应的方法
+         * @param spec     预先生成的注解解析结果，可以为null
+         */
+        Builder(Retrofit retrofit, Method method, ServiceMethodSpec spec) {
             this.retrofit = retrofit;
             this.method = method;
+            this.spec = spec;
             // 获取 method 中的所有注解
             this.methodAnnotations = method.getAnnotations();
             this.parameterTypes = method.getGenericParameterTypes();
+            for (int i = 0; i < parameterTypes.length; i++) {
+                // 不同method中相同的参数类型使用同一个实例
+                parameterTypes[i] = retrofit.typeCache.canonicalize(parameterTypes[i]);
+            }
             this.parameterAnnotationsArray = method.getParameterAnnotations();
         }
 
@@ -210,13 +240,18 @@ final class ServiceMethod<R, T> {
             }
             // 返回一个类型转换器
             responseConverter = createResponseConverter();
-            // 解析retrofit2.http下面的注解，解析完之后上面的一堆boolean值差不多都赋值好了
-            for (Annotation annotation : methodAnnotations) {
-                parseMethodAnnotation(annotation);
-            }
+            if (spec != null) {
+                // 编译期已经解析并校验过方法注解，直接使用
+                applySpec(spec);
+            } else {
+                // 解析retrofit2.http下面的注解，解析完之后上面的一堆boolean值差不多都赋值好了
+                for (Annotation annotation : methodAnnotations) {
+                    parseMethodAnnotation(annotation);
+                }
 
-            if (httpMethod == null) {
-                throw methodError("HTTP method annotation is required (e.g., @GET, @POST, etc.).");
+                if (httpMethod == null) {
+                    throw methodError("HTTP method annotation is required (e.g., @GET, @POST, etc.).");
+                }
             }
             // 没有body 错误判断
             if (!hasBody) {
@@ -231,21 +266,33 @@ final class ServiceMethod<R, T> {
             }
 
             int parameterCount = parameterAnnotationsArray.length;
+            if (spec != null && spec.parameters.length != parameterCount) {
+                throw methodError("Generated metadata has %s parameters but the method has %s.",
+                        spec.parameters.length, parameterCount);
+            }
             parameterHandlers = new ParameterHandler<?>[parameterCount];
+            ServiceMethodSpec.Parameter[] parameters = new ServiceMethodSpec.Parameter[parameterCount];
             for (int p = 0; p < parameterCount; p++) {
 
                 Type parameterType = parameterTypes[p];
-                if (Utils.hasUnresolvableType(parameterType)) {
+                if (retrofit.typeCache.hasUnresolvableType(parameterType)) {
                     throw parameterError(p, "Parameter type must not include a type variable or wildcard: %s",
                             parameterType);
                 }
                 // 解析对应参数和该参数的注解列表。
                 Annotation[] parameterAnnotations = parameterAnnotationsArray[p];
-                if (parameterAnnotations == null) {
-                    throw parameterError(p, "No Retrofit annotation found.");
+                ServiceMethodSpec.Parameter parameter;
+                if (spec != null) {
+                    parameter = spec.parameters[p];
+                } else {
+                    if (parameterAnnotations == null) {
+                        throw parameterError(p, "No Retrofit annotation found.");
+                    }
+                    parameter = parseParameter(p, parameterAnnotations);
                 }
+                parameters[p] = parameter;
                 // 添加请求参数
-                parameterHandlers[p] = parseParameter(p, parameterType, parameterAnnotations);
+                parameterHandlers[p] = parseParameterAnnotation(p, parameterType, parameterAnnotations, parameter);
             }
 
             if (relativeUrl == null && !gotUrl) {
@@ -261,6 +308,11 @@ final class ServiceMethod<R, T> {
                 throw methodError("Multipart method must contain at least one @Part.");
             }
 
+            if (spec == null) {
+                spec = new ServiceMethodSpec(httpMethod, hasBody, relativeUrl, headers, contentType,
+                        isFormEncoded, isMultipart, parameters);
+            }
+
             return new ServiceMethod<>(this);
         }
 
@@ -271,9 +323,9 @@ final class ServiceMethod<R, T> {
          */
         private CallAdapter<T, R> createCallAdapter() {
             // 获取返回类型
-            Type returnType = method.getGenericReturnType();
+            Type returnType = retrofit.typeCache.canonicalize(method.getGenericReturnType());
             // 返回类型判断
-            if (Utils.hasUnresolvableType(returnType)) {
+            if (retrofit.typeCache.hasUnresolvableType(returnType)) {
                 throw methodError(
                         "Method return type must not include a type variable or wildcard: %s", returnType);
             }
@@ -372,10 +424,62 @@ final class ServiceMethod<R, T> {
                             + "For dynamic query parameters use @Query.", queryParams);
                 }
             }
+            setRelativeUrl(value);
+        }
+
+        /**
+         * 使用预先生成的注解解析结果
+         */
+        private void applySpec(ServiceMethodSpec spec) {
+            this.httpMethod = spec.httpMethod;
+            this.hasBody = spec.hasBody;
+            this.headers = spec.headers;
+            this.contentType = spec.contentType;
+            this.isFormEncoded = spec.isFormEncoded;
+            this.isMultipart = spec.isMultipart;
+            // 依赖CallAdapter的返回类型，编译期无法校验
+            if ("HEAD".equals(httpMethod) && !Void.class.equals(responseType)) {
+                throw methodError("HEAD method must use Void as response type.");
+            }
+            if (spec.relativeUrl != null) {
+                setRelativeUrl(spec.relativeUrl);
+            }
+        }
+
+        /**
+         * @param value 请求的value user/{id}
+         */
+        private void setRelativeUrl(String value) {
             // 请求的value user/123/456
             this.relativeUrl = value;
-            // 如果请求url地址中包含{ PARAM }
-            this.relativeUrlParamNames = parsePathParameters(value);
+            // 只在这里解析一次{ PARAM }，每次请求直接填充模板
+            this.relativeUrlTemplate = UrlTemplate.parse(value);
+            // 普通的相对路径，提前把baseUrl和不变的前缀合并，每次请求只需追加动态的path
+            HttpUrl baseUrl = retrofit.baseUrl();
+            if (baseUrl.encodedQuery() == null && baseUrl.encodedFragment() == null
+                    && isPlainRelativePath(value)) {
+                int prefixLength = relativeUrlTemplate.staticPrefixLength();
+                this.relativeUrlPrefix = prefixLength == 0
+                        ? baseUrl
+                        : baseUrl.resolve(value.substring(0, prefixLength));
+            }
+        }
+
+        /**
+         * Returns true if {@code value} is a path relative to the base URL which can be appended
+         * segment by segment. Absolute paths, full URLs and values with a query or fragment must go
+         * through {@link HttpUrl#resolve(String)}.
+         */
+        private static boolean isPlainRelativePath(String value) {
+            char first = value.charAt(0);
+            if (first == '/' || value.indexOf('\\') != -1
+                    || value.indexOf('?') != -1 || value.indexOf('#') != -1) {
+                return false;
+            }
+            // A colon in the first segment would be parsed as a scheme.
+            int colon = value.indexOf(':');
+            int slash = value.indexOf('/');
+            return colon == -1 || (slash != -1 && slash < colon);
         }
 
         /**
@@ -415,19 +519,16 @@ final class ServiceMethod<R, T> {
         }
 
         /**
-         * @param p             index
-         * @param parameterType 参数类型
-         * @param annotations   参数的Annotation数组
-         * @return
+         * @param p           index
+         * @param annotations 参数的Annotation数组
+         * @return 参数上唯一的Retrofit注解
          */
-        private ParameterHandler<?> parseParameter(
-                int p, Type parameterType, Annotation[] annotations) {
-            ParameterHandler<?> result = null;
+        private ServiceMethodSpec.Parameter parseParameter(int p, Annotation[] annotations) {
+            ServiceMethodSpec.Parameter result = null;
             for (Annotation annotation : annotations) {
-                ParameterHandler<?> annotationAction = parseParameterAnnotation(
-                        p, parameterType, annotations, annotation);
+                ServiceMethodSpec.Parameter parameter = parseParameterSpec(annotation);
 
-                if (annotationAction == null) {
+                if (parameter == null) {
                     continue;
                 }
 
@@ -435,7 +536,7 @@ final class ServiceMethod<R, T> {
                     throw parameterError(p, "Multiple Retrofit annotations found, only one allowed.");
                 }
 
-                result = annotationAction;
+                result = parameter;
             }
 
             if (result == null) {
@@ -445,16 +546,62 @@ final class ServiceMethod<R, T> {
             return result;
         }
 
+        /**
+         * @param annotation 参数Annotation
+         * @return 不是Retrofit注解时返回null
+         */
+        private static ServiceMethodSpec.Parameter parseParameterSpec(Annotation annotation) {
+            if (annotation instanceof Url) {
+                return new ServiceMethodSpec.Parameter(ServiceMethodSpec.URL, null, false, null);
+            } else if (annotation instanceof Path) {
+                Path path = (Path) annotation;
+                return new ServiceMethodSpec.Parameter(
+                        ServiceMethodSpec.PATH, path.value(), path.encoded(), null);
+            } else if (annotation instanceof Query) {
+                Query query = (Query) annotation;
+                return new ServiceMethodSpec.Parameter(
+                        ServiceMethodSpec.QUERY, query.value(), query.encoded(), null);
+            } else if (annotation instanceof QueryName) {
+                return new ServiceMethodSpec.Parameter(
+                        ServiceMethodSpec.QUERY_NAME, null, ((QueryName) annotation).encoded(), null);
+            } else if (annotation instanceof QueryMap) {
+                return new ServiceMethodSpec.Parameter(
+                        ServiceMethodSpec.QUERY_MAP, null, ((QueryMap) annotation).encoded(), null);
+            } else if (annotation instanceof Header) {
+                return new ServiceMethodSpec.Parameter(
+                        ServiceMethodSpec.HEADER, ((Header) annotation).value(), false, null);
+            } else if (annotation instanceof HeaderMap) {
+                return new ServiceMethodSpec.Parameter(ServiceMethodSpec.HEADER_MAP, null, false, null);
+            } else if (annotation instanceof Field) {
+                Field field = (Field) annotation;
+                return new ServiceMethodSpec.Parameter(
+                        ServiceMethodSpec.FIELD, field.value(), field.encoded(), null);
+            } else if (annotation instanceof FieldMap) {
+                return new ServiceMethodSpec.Parameter(
+                        ServiceMethodSpec.FIELD_MAP, null, ((FieldMap) annotation).encoded(), null);
+            } else if (annotation instanceof Part) {
+                Part part = (Part) annotation;
+                return new ServiceMethodSpec.Parameter(
+                        ServiceMethodSpec.PART, part.value(), false, part.encoding());
+            } else if (annotation instanceof PartMap) {
+                return new ServiceMethodSpec.Parameter(
+                        ServiceMethodSpec.PART_MAP, null, false, ((PartMap) annotation).encoding());
+            } else if (annotation instanceof Body) {
+                return new ServiceMethodSpec.Parameter(ServiceMethodSpec.BODY, null, false, null);
+            }
+            return null; // Not a Retrofit annotation.
+        }
+
         /**
          * @param p           index
          * @param type        参数类型
-         * @param annotations 参数的Annotation数组
-         * @param annotation  参数Annotation
+         * @param annotations 参数的Annotation数组，用于查找Converter
+         * @param parameter   参数上的Retrofit注解
          * @return
          */
         private ParameterHandler<?> parseParameterAnnotation(
-                int p, Type type, Annotation[] annotations, Annotation annotation) {
-            if (annotation instanceof Url) {
+                int p, Type type, Annotation[] annotations, ServiceMethodSpec.Parameter parameter) {
+            if (parameter.kind == ServiceMethodSpec.URL) {
                 if (gotUrl) {
                     throw parameterError(p, "Multiple @Url method annotations found.");
                 }
@@ -482,7 +629,7 @@ final class ServiceMethod<R, T> {
 
             }
             // Path
-            else if (annotation instanceof Path) {
+            else if (parameter.kind == ServiceMethodSpec.PATH) {
                 if (gotQuery) {
                     throw parameterError(p, "A @Path parameter must not come after a @Query.");
                 }
@@ -494,22 +641,20 @@ final class ServiceMethod<R, T> {
                 }
                 gotPath = true;
 
-                Path path = (Path) annotation;
-                String name = path.value();
-                // relativeUrlParamNames 中是否包含path name的判断
-                validatePathName(p, name);
+                String name = parameter.name;
+                // url模板中是否包含path name的判断
+                int index = validatePathName(p, name);
 
                 Converter<?, String> converter = retrofit.stringConverter(type, annotations);
-                // 替换{value}内容
-                return new ParameterHandler.Path<>(name, converter, path.encoded());
+                // 填充模板中{value}对应的slot
+                return new ParameterHandler.Path<>(name, index, converter, parameter.encoded);
 
             }
             // body参数
-            else if (annotation instanceof Query) {
-                Query query = (Query) annotation;
+            else if (parameter.kind == ServiceMethodSpec.QUERY) {
                 // 参数名
-                String name = query.value();
-                boolean encoded = query.encoded();
+                String name = parameter.name;
+                boolean encoded = parameter.encoded;
 
                 Class<?> rawParameterType = Utils.getRawType(type);
                 gotQuery = true;
@@ -521,17 +666,18 @@ final class ServiceMethod<R, T> {
                                 + "<String>)");
                     }
                     ParameterizedType parameterizedType = (ParameterizedType) type;
-                    Type iterableType = Utils.getParameterUpperBound(0, parameterizedType);
+                    Type iterableType = retrofit.typeCache.getParameterUpperBound(0, parameterizedType);
                     Converter<?, String> converter =
                             retrofit.stringConverter(iterableType, annotations);
                     // 添加请求参数
                     return new ParameterHandler.Query<>(name, converter, encoded).iterable();
                 } else if (rawParameterType.isArray()) {
-                    Class<?> arrayComponentType = boxIfPrimitive(rawParameterType.getComponentType());
+                    Class<?> componentType = rawParameterType.getComponentType();
                     Converter<?, String> converter =
-                            retrofit.stringConverter(arrayComponentType, annotations);
+                            retrofit.stringConverter(boxIfPrimitive(componentType), annotations);
                     // 添加请求参数
-                    return new ParameterHandler.Query<>(name, converter, encoded).array();
+                    return new ParameterHandler.Query<>(name, converter, encoded)
+                            .array(componentType, converter);
                 } else {
                     Converter<?, String> converter =
                             retrofit.stringConverter(type, annotations);
@@ -539,9 +685,8 @@ final class ServiceMethod<R, T> {
                     return new ParameterHandler.Query<>(name, converter, encoded);
                 }
 
-            } else if (annotation instanceof QueryName) {
-                QueryName query = (QueryName) annotation;
-                boolean encoded = query.encoded();
+            } else if (parameter.kind == ServiceMethodSpec.QUERY_NAME) {
+                boolean encoded = parameter.encoded;
 
                 Class<?> rawParameterType = Utils.getRawType(type);
                 gotQuery = true;
@@ -553,44 +698,44 @@ final class ServiceMethod<R, T> {
                                 + "<String>)");
                     }
                     ParameterizedType parameterizedType = (ParameterizedType) type;
-                    Type iterableType = Utils.getParameterUpperBound(0, parameterizedType);
+                    Type iterableType = retrofit.typeCache.getParameterUpperBound(0, parameterizedType);
                     Converter<?, String> converter =
                             retrofit.stringConverter(iterableType, annotations);
                     return new ParameterHandler.QueryName<>(converter, encoded).iterable();
                 } else if (rawParameterType.isArray()) {
-                    Class<?> arrayComponentType = boxIfPrimitive(rawParameterType.getComponentType());
+                    Class<?> componentType = rawParameterType.getComponentType();
                     Converter<?, String> converter =
-                            retrofit.stringConverter(arrayComponentType, annotations);
-                    return new ParameterHandler.QueryName<>(converter, encoded).array();
+                            retrofit.stringConverter(boxIfPrimitive(componentType), annotations);
+                    return new ParameterHandler.QueryName<>(converter, encoded)
+                            .array(componentType, converter);
                 } else {
                     Converter<?, String> converter =
                             retrofit.stringConverter(type, annotations);
                     return new ParameterHandler.QueryName<>(converter, encoded);
                 }
 
-            } else if (annotation instanceof QueryMap) {
+            } else if (parameter.kind == ServiceMethodSpec.QUERY_MAP) {
                 Class<?> rawParameterType = Utils.getRawType(type);
                 if (!Map.class.isAssignableFrom(rawParameterType)) {
                     throw parameterError(p, "@QueryMap parameter type must be Map.");
                 }
-                Type mapType = Utils.getSupertype(type, rawParameterType, Map.class);
+                Type mapType = retrofit.typeCache.getSupertype(type, rawParameterType, Map.class);
                 if (!(mapType instanceof ParameterizedType)) {
                     throw parameterError(p, "Map must include generic types (e.g., Map<String, String>)");
                 }
                 ParameterizedType parameterizedType = (ParameterizedType) mapType;
-                Type keyType = Utils.getParameterUpperBound(0, parameterizedType);
+                Type keyType = retrofit.typeCache.getParameterUpperBound(0, parameterizedType);
                 if (String.class != keyType) {
                     throw parameterError(p, "@QueryMap keys must be of type String: " + keyType);
                 }
-                Type valueType = Utils.getParameterUpperBound(1, parameterizedType);
+                Type valueType = retrofit.typeCache.getParameterUpperBound(1, parameterizedType);
                 Converter<?, String> valueConverter =
                         retrofit.stringConverter(valueType, annotations);
 
-                return new ParameterHandler.QueryMap<>(valueConverter, ((QueryMap) annotation).encoded());
+                return new ParameterHandler.QueryMap<>(valueConverter, parameter.encoded);
 
-            } else if (annotation instanceof Header) {
-                Header header = (Header) annotation;
-                String name = header.value();
+            } else if (parameter.kind == ServiceMethodSpec.HEADER) {
+                String name = parameter.name;
 
                 Class<?> rawParameterType = Utils.getRawType(type);
                 if (Iterable.class.isAssignableFrom(rawParameterType)) {
@@ -601,48 +746,48 @@ final class ServiceMethod<R, T> {
                                 + "<String>)");
                     }
                     ParameterizedType parameterizedType = (ParameterizedType) type;
-                    Type iterableType = Utils.getParameterUpperBound(0, parameterizedType);
+                    Type iterableType = retrofit.typeCache.getParameterUpperBound(0, parameterizedType);
                     Converter<?, String> converter =
                             retrofit.stringConverter(iterableType, annotations);
                     return new ParameterHandler.Header<>(name, converter).iterable();
                 } else if (rawParameterType.isArray()) {
-                    Class<?> arrayComponentType = boxIfPrimitive(rawParameterType.getComponentType());
+                    Class<?> componentType = rawParameterType.getComponentType();
                     Converter<?, String> converter =
-                            retrofit.stringConverter(arrayComponentType, annotations);
-                    return new ParameterHandler.Header<>(name, converter).array();
+                            retrofit.stringConverter(boxIfPrimitive(componentType), annotations);
+                    return new ParameterHandler.Header<>(name, converter)
+                            .array(componentType, converter);
                 } else {
                     Converter<?, String> converter =
                             retrofit.stringConverter(type, annotations);
                     return new ParameterHandler.Header<>(name, converter);
                 }
 
-            } else if (annotation instanceof HeaderMap) {
+            } else if (parameter.kind == ServiceMethodSpec.HEADER_MAP) {
                 Class<?> rawParameterType = Utils.getRawType(type);
                 if (!Map.class.isAssignableFrom(rawParameterType)) {
                     throw parameterError(p, "@HeaderMap parameter type must be Map.");
                 }
-                Type mapType = Utils.getSupertype(type, rawParameterType, Map.class);
+                Type mapType = retrofit.typeCache.getSupertype(type, rawParameterType, Map.class);
                 if (!(mapType instanceof ParameterizedType)) {
                     throw parameterError(p, "Map must include generic types (e.g., Map<String, String>)");
                 }
                 ParameterizedType parameterizedType = (ParameterizedType) mapType;
-                Type keyType = Utils.getParameterUpperBound(0, parameterizedType);
+                Type keyType = retrofit.typeCache.getParameterUpperBound(0, parameterizedType);
                 if (String.class != keyType) {
                     throw parameterError(p, "@HeaderMap keys must be of type String: " + keyType);
                 }
-                Type valueType = Utils.getParameterUpperBound(1, parameterizedType);
+                Type valueType = retrofit.typeCache.getParameterUpperBound(1, parameterizedType);
                 Converter<?, String> valueConverter =
                         retrofit.stringConverter(valueType, annotations);
 
                 return new ParameterHandler.HeaderMap<>(valueConverter);
 
-            } else if (annotation instanceof Field) {
+            } else if (parameter.kind == ServiceMethodSpec.FIELD) {
                 if (!isFormEncoded) {
                     throw parameterError(p, "@Field parameters can only be used with form encoding.");
                 }
-                Field field = (Field) annotation;
-                String name = field.value();
-                boolean encoded = field.encoded();
+                String name = parameter.name;
+                boolean encoded = parameter.encoded;
 
                 gotField = true;
 
@@ -655,22 +800,23 @@ final class ServiceMethod<R, T> {
                                 + "<String>)");
                     }
                     ParameterizedType parameterizedType = (ParameterizedType) type;
-                    Type iterableType = Utils.getParameterUpperBound(0, parameterizedType);
+                    Type iterableType = retrofit.typeCache.getParameterUpperBound(0, parameterizedType);
                     Converter<?, String> converter =
                             retrofit.stringConverter(iterableType, annotations);
                     return new ParameterHandler.Field<>(name, converter, encoded).iterable();
                 } else if (rawParameterType.isArray()) {
-                    Class<?> arrayComponentType = boxIfPrimitive(rawParameterType.getComponentType());
+                    Class<?> componentType = rawParameterType.getComponentType();
                     Converter<?, String> converter =
-                            retrofit.stringConverter(arrayComponentType, annotations);
-                    return new ParameterHandler.Field<>(name, converter, encoded).array();
+                            retrofit.stringConverter(boxIfPrimitive(componentType), annotations);
+                    return new ParameterHandler.Field<>(name, converter, encoded)
+                            .array(componentType, converter);
                 } else {
                     Converter<?, String> converter =
                             retrofit.stringConverter(type, annotations);
                     return new ParameterHandler.Field<>(name, converter, encoded);
                 }
 
-            } else if (annotation instanceof FieldMap) {
+            } else if (parameter.kind == ServiceMethodSpec.FIELD_MAP) {
                 if (!isFormEncoded) {
                     throw parameterError(p, "@FieldMap parameters can only be used with form encoding.");
                 }
@@ -678,31 +824,30 @@ final class ServiceMethod<R, T> {
                 if (!Map.class.isAssignableFrom(rawParameterType)) {
                     throw parameterError(p, "@FieldMap parameter type must be Map.");
                 }
-                Type mapType = Utils.getSupertype(type, rawParameterType, Map.class);
+                Type mapType = retrofit.typeCache.getSupertype(type, rawParameterType, Map.class);
                 if (!(mapType instanceof ParameterizedType)) {
                     throw parameterError(p,
                             "Map must include generic types (e.g., Map<String, String>)");
                 }
                 ParameterizedType parameterizedType = (ParameterizedType) mapType;
-                Type keyType = Utils.getParameterUpperBound(0, parameterizedType);
+                Type keyType = retrofit.typeCache.getParameterUpperBound(0, parameterizedType);
                 if (String.class != keyType) {
                     throw parameterError(p, "@FieldMap keys must be of type String: " + keyType);
                 }
-                Type valueType = Utils.getParameterUpperBound(1, parameterizedType);
+                Type valueType = retrofit.typeCache.getParameterUpperBound(1, parameterizedType);
                 Converter<?, String> valueConverter =
                         retrofit.stringConverter(valueType, annotations);
 
                 gotField = true;
-                return new ParameterHandler.FieldMap<>(valueConverter, ((FieldMap) annotation).encoded());
+                return new ParameterHandler.FieldMap<>(valueConverter, parameter.encoded);
 
-            } else if (annotation instanceof Part) {
+            } else if (parameter.kind == ServiceMethodSpec.PART) {
                 if (!isMultipart) {
                     throw parameterError(p, "@Part parameters can only be used with multipart encoding.");
                 }
-                Part part = (Part) annotation;
                 gotPart = true;
 
-                String partName = part.value();
+                String partName = parameter.name;
                 Class<?> rawParameterType = Utils.getRawType(type);
                 if (partName.isEmpty()) {
                     if (Iterable.class.isAssignableFrom(rawParameterType)) {
@@ -713,7 +858,7 @@ final class ServiceMethod<R, T> {
                                     + "<String>)");
                         }
                         ParameterizedType parameterizedType = (ParameterizedType) type;
-                        Type iterableType = Utils.getParameterUpperBound(0, parameterizedType);
+                        Type iterableType = retrofit.typeCache.getParameterUpperBound(0, parameterizedType);
                         if (!MultipartBody.Part.class.isAssignableFrom(Utils.getRawType(iterableType))) {
                             throw parameterError(p,
                                     "@Part annotation must supply a name or use MultipartBody.Part parameter type.");
@@ -735,7 +880,7 @@ final class ServiceMethod<R, T> {
                 } else {
                     Headers headers =
                             Headers.of("Content-Disposition", "form-data; name=\"" + partName + "\"",
-                                    "Content-Transfer-Encoding", part.encoding());
+                                    "Content-Transfer-Encoding", parameter.encoding);
 
                     if (Iterable.class.isAssignableFrom(rawParameterType)) {
                         if (!(type instanceof ParameterizedType)) {
@@ -745,13 +890,16 @@ final class ServiceMethod<R, T> {
                                     + "<String>)");
                         }
                         ParameterizedType parameterizedType = (ParameterizedType) type;
-                        Type iterableType = Utils.getParameterUpperBound(0, parameterizedType);
+                        Type iterableType = retrofit.typeCache.getParameterUpperBound(0, parameterizedType);
                         if (MultipartBody.Part.class.isAssignableFrom(Utils.getRawType(iterableType))) {
                             throw parameterError(p, "@Part parameters using the MultipartBody.Part must not "
                                     + "include a part name in the annotation.");
                         }
                         Converter<?, RequestBody> converter =
                                 retrofit.requestBodyConverter(iterableType, annotations, methodAnnotations);
+                        if (Utils.getRawType(iterableType) == File.class) {
+                            return filePart(partName, parameter.encoding, converter).iterable();
+                        }
                         return new ParameterHandler.Part<>(headers, converter).iterable();
                     } else if (rawParameterType.isArray()) {
                         Class<?> arrayComponentType = boxIfPrimitive(rawParameterType.getComponentType());
@@ -761,6 +909,9 @@ final class ServiceMethod<R, T> {
                         }
                         Converter<?, RequestBody> converter =
                                 retrofit.requestBodyConverter(arrayComponentType, annotations, methodAnnotations);
+                        if (arrayComponentType == File.class) {
+                            return filePart(partName, parameter.encoding, converter).array();
+                        }
                         return new ParameterHandler.Part<>(headers, converter).array();
                     } else if (MultipartBody.Part.class.isAssignableFrom(rawParameterType)) {
                         throw parameterError(p, "@Part parameters using the MultipartBody.Part must not "
@@ -768,11 +919,14 @@ final class ServiceMethod<R, T> {
                     } else {
                         Converter<?, RequestBody> converter =
                                 retrofit.requestBodyConverter(type, annotations, methodAnnotations);
+                        if (rawParameterType == File.class) {
+                            return filePart(partName, parameter.encoding, converter);
+                        }
                         return new ParameterHandler.Part<>(headers, converter);
                     }
                 }
 
-            } else if (annotation instanceof PartMap) {
+            } else if (parameter.kind == ServiceMethodSpec.PART_MAP) {
                 if (!isMultipart) {
                     throw parameterError(p, "@PartMap parameters can only be used with multipart encoding.");
                 }
@@ -781,18 +935,18 @@ final class ServiceMethod<R, T> {
                 if (!Map.class.isAssignableFrom(rawParameterType)) {
                     throw parameterError(p, "@PartMap parameter type must be Map.");
                 }
-                Type mapType = Utils.getSupertype(type, rawParameterType, Map.class);
+                Type mapType = retrofit.typeCache.getSupertype(type, rawParameterType, Map.class);
                 if (!(mapType instanceof ParameterizedType)) {
                     throw parameterError(p, "Map must include generic types (e.g., Map<String, String>)");
                 }
                 ParameterizedType parameterizedType = (ParameterizedType) mapType;
 
-                Type keyType = Utils.getParameterUpperBound(0, parameterizedType);
+                Type keyType = retrofit.typeCache.getParameterUpperBound(0, parameterizedType);
                 if (String.class != keyType) {
                     throw parameterError(p, "@PartMap keys must be of type String: " + keyType);
                 }
 
-                Type valueType = Utils.getParameterUpperBound(1, parameterizedType);
+                Type valueType = retrofit.typeCache.getParameterUpperBound(1, parameterizedType);
                 if (MultipartBody.Part.class.isAssignableFrom(Utils.getRawType(valueType))) {
                     throw parameterError(p, "@PartMap values cannot be MultipartBody.Part. "
                             + "Use @Part List<Part> or a different value type instead.");
@@ -801,10 +955,9 @@ final class ServiceMethod<R, T> {
                 Converter<?, RequestBody> valueConverter =
                         retrofit.requestBodyConverter(valueType, annotations, methodAnnotations);
 
-                PartMap partMap = (PartMap) annotation;
-                return new ParameterHandler.PartMap<>(valueConverter, partMap.encoding());
+                return new ParameterHandler.PartMap<>(valueConverter, parameter.encoding);
 
-            } else if (annotation instanceof Body) {
+            } else if (parameter.kind == ServiceMethodSpec.BODY) {
                 if (isFormEncoded || isMultipart) {
                     throw parameterError(p,
                             "@Body parameters cannot be used with form or multi-part encoding.");
@@ -824,24 +977,27 @@ final class ServiceMethod<R, T> {
                 return new ParameterHandler.Body<>(converter);
             }
 
-            return null; // Not a Retrofit annotation.
+            throw new AssertionError("Unknown parameter kind: " + parameter.kind);
         }
 
         /**
-         * relativeUrlParamNames 中是否包含path name的判断
+         * url模板中是否包含path name的判断
          *
          * @param p
          * @param name path
+         * @return name在url模板中的下标
          */
-        private void validatePathName(int p, String name) {
+        private int validatePathName(int p, String name) {
             if (!PARAM_NAME_REGEX.matcher(name).matches()) {
                 throw parameterError(p, "@Path parameter name must match %s. Found: %s",
                         PARAM_URL_REGEX.pattern(), name);
             }
             // Verify URL replacement name is actually present in the URL path.
-            if (!relativeUrlParamNames.contains(name)) {
+            int index = relativeUrlTemplate.indexOf(name);
+            if (index == -1) {
                 throw parameterError(p, "URL \"%s\" does not contain \"{%s}\".", relativeUrl, name);
             }
+            return index;
         }
 
         /**
@@ -883,19 +1039,11 @@ final class ServiceMethod<R, T> {
         }
     }
 
-    /**
-     * Gets the set of unique path parameters used in the given URI. If a parameter is used twice
-     * in the URI, it will only show up once in the set.
-     * <p>
-     * 如果请求url地址中包含{ PARAM } 替换
-     */
-    static Set<String> parsePathParameters(String path) {
-        Matcher m = PARAM_URL_REGEX.matcher(path);
-        Set<String> patterns = new LinkedHashSet<>();
-        while (m.find()) {
-            patterns.add(m.group(1));
-        }
-        return patterns;
+    @SuppressWarnings("unchecked") // 只在参数类型为File时调用，converter的输入类型就是File
+    static ParameterHandler.FilePart filePart(
+            String name, String transferEncoding, Converter<?, RequestBody> converter) {
+        return new ParameterHandler.FilePart(
+                name, transferEncoding, (Converter<File, RequestBody>) converter);
     }
 
     static Class<?> boxIfPrimitive(Class<?> type) {
@@ -0,0 +1,359 @@
+/*
+ * Copyright (C) 2017 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package retrofit2;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Headers;
+import okhttp3.MediaType;
+
+/**
+ * A file holding the {@link ServiceMethodSpec} of every method of previously used service
+ * interfaces, so that a later process can skip parsing their annotations. See
+ * {@link Retrofit.Builder#serviceMethodSnapshot(File, String)}.
+ * <p>
+ * The file is read through a memory mapping. It records the application version it was written
+ * by, and a file written by another version is ignored as a whole. Each service entry also
+ * records a fingerprint of the service's methods and their method and parameter annotations, so
+ * an interface edited without a new version, as is usual in development builds, is parsed again
+ * rather than served stale specs. Computing the fingerprint only hashes the annotations, which is
+ * much cheaper than parsing them. A missing, unreadable or corrupt file is treated as empty.
+ * Writes, including the fingerprint of the saved service, run on a background thread owned by
+ * the snapshot.
+ * <p>
+ * 注解解析结果的本地缓存文件，下次启动时不用再解析注解
+ */
+final class ServiceMethodSnapshot {
+    private static final int MAGIC = 0x52534d53; // "RSMS"
+    private static final int VERSION = 3;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String HTTP_PACKAGE = "retrofit2.http.";
+
+    final File file;
+    // 应用的版本，与文件中的不一致时整个文件作废
+    private final String version;
+    // key 接口名; 第一次使用时从文件中加载
+    private Map<String, ServiceEntry> entries;
+    // 写文件的后台线程，空闲时退出
+    private final Executor writer = new ThreadPoolExecutor(0, 1, 10, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "Retrofit Snapshot");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    ServiceMethodSnapshot(File file, String version) {
+        this.file = file;
+        this.version = version;
+    }
+
+    /**
+     * Returns the specs of every method of {@code service}, or null if the snapshot has no entry
+     * for it or the entry is stale.
+     */
+    synchronized Map<Method, ServiceMethodSpec> load(Class<?> service) {
+        ServiceEntry entry = entries().get(service.getName());
+        if (entry == null) {
+            return null;
+        }
+        // 接口的方法或者注解已经改变
+        if (entry.fingerprint != fingerprint(service)) {
+            return null;
+        }
+        Map<Method, ServiceMethodSpec> specs = new LinkedHashMap<>();
+        for (Method method : service.getDeclaredMethods()) {
+            ServiceMethodSpec spec = entry.specs.get(methodKey(method));
+            if (spec != null) {
+                specs.put(method, spec);
+            }
+        }
+        return specs;
+    }
+
+    /**
+     * Replaces the entry of {@code service} and rewrites the file on the writer thread. Failures
+     * are ignored: the next process just parses the annotations again.
+     */
+    void save(final Class<?> service, Map<Method, ServiceMethodSpec> specs) {
+        final String name = service.getName();
+        final Map<String, ServiceMethodSpec> byMethod = new LinkedHashMap<>();
+        for (Map.Entry<Method, ServiceMethodSpec> entry : specs.entrySet()) {
+            byMethod.put(methodKey(entry.getKey()), entry.getValue());
+        }
+        writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                long fingerprint = fingerprint(service);
+                synchronized (ServiceMethodSnapshot.this) {
+                    entries().put(name, new ServiceEntry(fingerprint, byMethod));
+                    try {
+                        write();
+                    } catch (IOException ignored) {
+                        // 只是缓存，写失败下次重新解析注解
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * The name and erased parameter types of {@code method}, which identify it within its
+     * interface.
+     */
+    private static String methodKey(Method method) {
+        StringBuilder key = new StringBuilder(method.getName()).append('(');
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        for (int i = 0; i < parameterTypes.length; i++) {
+            if (i > 0) key.append(',');
+            key.append(parameterTypes[i].getName());
+        }
+        return key.append(')').toString();
+    }
+
+    /**
+     * A hash of every declared method of {@code service}: its {@link #methodKey}, and its
+     * {@code retrofit2.http} method and parameter annotations with their values, which are all a
+     * spec is built from, each hashed with its type. Their members are strings, booleans and
+     * string arrays, whose {@link Annotation#hashCode()} is the same in every process. It does not depend on the order
+     * in which {@link Class#getDeclaredMethods()} returns the methods.
+     */
+    static long fingerprint(Class<?> service) {
+        long fingerprint = 0;
+        for (Method method : service.getDeclaredMethods()) {
+            long hash = fnv1a(methodKey(method));
+            hash = hash * 31 + annotationsHash(method.getDeclaredAnnotations());
+            for (Annotation[] annotations : method.getParameterAnnotations()) {
+                hash = hash * 31 + annotationsHash(annotations);
+            }
+            // 各个方法的hash相加，与方法的顺序无关
+            fingerprint += mix(hash);
+        }
+        return fingerprint;
+    }
+
+    private static long annotationsHash(Annotation[] annotations) {
+        long hash = 1;
+        for (Annotation annotation : annotations) {
+            // 其他注解的成员可能是Class或者enum，hashCode在每个进程中不同
+            String type = annotation.annotationType().getName();
+            if (type.startsWith(HTTP_PACKAGE)) {
+                // hashCode()不包含注解的类型，@Query("q")和@Path("q")相同
+                hash = hash * 31 + type.hashCode();
+                hash = hash * 31 + annotation.hashCode();
+            }
+        }
+        return hash;
+    }
+
+    private static long fnv1a(CharSequence text) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0, length = text.length(); i < length; i++) {
+            hash ^= text.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    // 打散各个bit，相加时不容易互相抵消
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        return hash ^ (hash >>> 33);
+    }
+
+    private Map<String, ServiceEntry> entries() {
+        if (entries == null) {
+            entries = new LinkedHashMap<>();
+            try {
+                read(entries);
+            } catch (IOException | RuntimeException e) {
+                // 文件不存在或者已损坏，当作空的
+                entries.clear();
+            }
+        }
+        return entries;
+    }
+
+    private void read(Map<String, ServiceEntry> entries) throws IOException {
+        if (!file.exists()) return;
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = randomAccessFile.getChannel();
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) return;
+            // 其他版本的应用写入的文件，注解可能已经改变
+            if (!version.equals(readString(buffer))) return;
+
+            int serviceCount = buffer.getInt();
+            for (int i = 0; i < serviceCount; i++) {
+                String name = readString(buffer);
+                long fingerprint = buffer.getLong();
+                int methodCount = buffer.getInt();
+                Map<String, ServiceMethodSpec> specs = new LinkedHashMap<>();
+                for (int m = 0; m < methodCount; m++) {
+                    String method = readString(buffer);
+                    specs.put(method, readSpec(buffer));
+                }
+                entries.put(name, new ServiceEntry(fingerprint, specs));
+            }
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    private static ServiceMethodSpec readSpec(ByteBuffer buffer) {
+        String httpMethod = readString(buffer);
+        byte flags = buffer.get();
+        String relativeUrl = readString(buffer);
+        String contentType = readString(buffer);
+
+        Headers headers = null;
+        int headerCount = buffer.getInt();
+        if (headerCount > 0) {
+            Headers.Builder builder = new Headers.Builder();
+            for (int i = 0; i < headerCount; i++) {
+                builder.add(readString(buffer), readString(buffer));
+            }
+            headers = builder.build();
+        }
+
+        ServiceMethodSpec.Parameter[] parameters = new ServiceMethodSpec.Parameter[buffer.getInt()];
+        for (int i = 0; i < parameters.length; i++) {
+            int kind = buffer.get();
+            String name = readString(buffer);
+            boolean encoded = buffer.get() != 0;
+            String encoding = readString(buffer);
+            parameters[i] = new ServiceMethodSpec.Parameter(kind, name, encoded, encoding);
+        }
+
+        return new ServiceMethodSpec(httpMethod, (flags & 1) != 0, relativeUrl, headers,
+                contentType != null ? MediaType.parse(contentType) : null,
+                (flags & 2) != 0, (flags & 4) != 0, parameters);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length == -1) return null;
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IllegalStateException("Corrupt snapshot.");
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    /**
+     * Writes all entries to a temporary file which then replaces {@link #file}, so that readers
+     * never see a partially written snapshot.
+     */
+    private void write() throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temp)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            writeString(out, version);
+            out.writeInt(entries.size());
+            for (Map.Entry<String, ServiceEntry> entry : entries.entrySet()) {
+                writeString(out, entry.getKey());
+                out.writeLong(entry.getValue().fingerprint);
+                Map<String, ServiceMethodSpec> specs = entry.getValue().specs;
+                out.writeInt(specs.size());
+                for (Map.Entry<String, ServiceMethodSpec> spec : specs.entrySet()) {
+                    writeString(out, spec.getKey());
+                    writeSpec(out, spec.getValue());
+                }
+            }
+        } finally {
+            out.close();
+        }
+        if (!temp.renameTo(file)) {
+            // Windows下renameTo不会覆盖已有的文件
+            if (!file.delete() || !temp.renameTo(file)) {
+                temp.delete();
+                throw new IOException("Unable to replace " + file);
+            }
+        }
+    }
+
+    private static void writeSpec(DataOutputStream out, ServiceMethodSpec spec) throws IOException {
+        writeString(out, spec.httpMethod);
+        out.writeByte((spec.hasBody ? 1 : 0) | (spec.isFormEncoded ? 2 : 0) | (spec.isMultipart ? 4 : 0));
+        writeString(out, spec.relativeUrl);
+        writeString(out, spec.contentType != null ? spec.contentType.toString() : null);
+
+        Headers headers = spec.headers;
+        int headerCount = headers != null ? headers.size() : 0;
+        out.writeInt(headerCount);
+        for (int i = 0; i < headerCount; i++) {
+            writeString(out, headers.name(i));
+            writeString(out, headers.value(i));
+        }
+
+        out.writeInt(spec.parameters.length);
+        for (ServiceMethodSpec.Parameter parameter : spec.parameters) {
+            out.writeByte(parameter.kind);
+            writeString(out, parameter.name);
+            out.writeByte(parameter.encoded ? 1 : 0);
+            writeString(out, parameter.encoding);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static final class ServiceEntry {
+        // 保存时接口的fingerprint()
+        final long fingerprint;
+        // key methodKey()
+        final Map<String, ServiceMethodSpec> specs;
+
+        ServiceEntry(long fingerprint, Map<String, ServiceMethodSpec> specs) {
+            this.fingerprint = fingerprint;
+            this.specs = specs;
+        }
+    }
+}
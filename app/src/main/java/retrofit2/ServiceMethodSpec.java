@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2017 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package retrofit2;
+
+import okhttp3.Headers;
+import okhttp3.MediaType;
+
+/**
+ * The converter-independent part of a {@link ServiceMethod}: everything read from the method and
+ * parameter annotations. It is either parsed by reflection in {@link ServiceMethod.Builder} or
+ * generated ahead of time by the retrofit-compiler annotation processor, in which case the method
+ * annotations were already validated at compile time.
+ * <p>
+ * 与Converter无关的注解解析结果：请求类型、url、header、参数的注解类型等
+ */
+final class ServiceMethodSpec {
+    // 参数注解的类型
+    static final int URL = 0;
+    static final int PATH = 1;
+    static final int QUERY = 2;
+    static final int QUERY_NAME = 3;
+    static final int QUERY_MAP = 4;
+    static final int HEADER = 5;
+    static final int HEADER_MAP = 6;
+    static final int FIELD = 7;
+    static final int FIELD_MAP = 8;
+    static final int PART = 9;
+    static final int PART_MAP = 10;
+    static final int BODY = 11;
+
+    // 请求的类型post get
+    final String httpMethod;
+    final boolean hasBody;
+    // 请求的value user/{id}，@Url 请求时为null
+    final String relativeUrl;
+    // @Headers 中除Content-Type以外的header，可以为null
+    final Headers headers;
+    final MediaType contentType;
+    final boolean isFormEncoded;
+    final boolean isMultipart;
+    // 每个方法参数对应一个
+    final Parameter[] parameters;
+
+    ServiceMethodSpec(String httpMethod, boolean hasBody, String relativeUrl, Headers headers,
+                      MediaType contentType, boolean isFormEncoded, boolean isMultipart,
+                      Parameter[] parameters) {
+        this.httpMethod = httpMethod;
+        this.hasBody = hasBody;
+        this.relativeUrl = relativeUrl;
+        this.headers = headers;
+        this.contentType = contentType;
+        this.isFormEncoded = isFormEncoded;
+        this.isMultipart = isMultipart;
+        this.parameters = parameters;
+    }
+
+    /**
+     * The Retrofit annotation of one method parameter.
+     */
+    static final class Parameter {
+        // URL、PATH、QUERY...
+        final int kind;
+        // @Path、@Query、@Header、@Field、@Part 的value，其它为null
+        final String name;
+        final boolean encoded;
+        // @Part、@PartMap 的Content-Transfer-Encoding，其它为null
+        final String encoding;
+
+        Parameter(int kind, String name, boolean encoded, String encoding) {
+            this.kind = kind;
+            this.name = name;
+            this.encoded = encoded;
+            this.encoding = encoding;
+        }
+    }
+
+    /**
+     * Decodes the text form written by the retrofit-compiler annotation processor. Tokens are
+     * separated by {@code '\n'}:
+     * <pre>
+     * httpMethod
+     * flags                      any of 'B' (has body), 'F' (form encoded), 'M' (multipart)
+     * relativeUrl                empty for {@code @Url}
+     * contentType                may be empty
+     * headerCount
+     *   name, value              headerCount times
+     * parameterCount
+     *   kind, name, encoded, encoding     parameterCount times; encoded is '0' or '1'
+     * </pre>
+     */
+    static ServiceMethodSpec decode(String spec) {
+        String[] tokens = spec.split("\n", -1);
+        int pos = 0;
+        String httpMethod = tokens[pos++];
+        String flags = tokens[pos++];
+        String relativeUrl = tokens[pos++];
+        String contentTypeString = tokens[pos++];
+        MediaType contentType = null;
+        if (!contentTypeString.isEmpty()) {
+            contentType = MediaType.parse(contentTypeString);
+            if (contentType == null) {
+                throw new IllegalArgumentException("Malformed content type: " + contentTypeString);
+            }
+        }
+
+        Headers headers = null;
+        int headerCount = Integer.parseInt(tokens[pos++]);
+        if (headerCount > 0) {
+            Headers.Builder builder = new Headers.Builder();
+            for (int i = 0; i < headerCount; i++) {
+                builder.add(tokens[pos++], tokens[pos++]);
+            }
+            headers = builder.build();
+        }
+
+        Parameter[] parameters = new Parameter[Integer.parseInt(tokens[pos++])];
+        for (int i = 0; i < parameters.length; i++) {
+            int kind = Integer.parseInt(tokens[pos++]);
+            String name = tokens[pos++];
+            boolean encoded = "1".equals(tokens[pos++]);
+            String encoding = tokens[pos++];
+            parameters[i] = new Parameter(kind, name, encoded, encoding);
+        }
+        if (pos != tokens.length) {
+            throw new IllegalArgumentException("Unexpected trailing data in service method spec.");
+        }
+
+        return new ServiceMethodSpec(httpMethod, flags.indexOf('B') != -1,
+                relativeUrl.isEmpty() ? null : relativeUrl, headers, contentType,
+                flags.indexOf('F') != -1, flags.indexOf('M') != -1, parameters);
+    }
+}
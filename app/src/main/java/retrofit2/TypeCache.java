@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2017 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package retrofit2;
+
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.WildcardType;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Memoized type resolution for the service methods of one {@link Retrofit} instance. The maps
+ * are keyed by {@link Type#equals}, so equal types from different methods share entries, and
+ * they only grow with the types used by that instance's service interfaces. Keeping them on the
+ * instance rather than in static fields lets the types, and their class loaders, be collected
+ * together with it.
+ * <p>
+ * 每个Retrofit实例各自缓存类型解析的结果，随Retrofit一起回收
+ */
+final class TypeCache {
+    // 相同的Type只保留一个实例
+    private final ConcurrentHashMap<Type, Type> canonicalTypes = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Type, Boolean> unresolvableTypes = new ConcurrentHashMap<>();
+    // key ParameterizedType; value 每个类型参数的上界
+    private final ConcurrentHashMap<ParameterizedType, Type[]> upperBounds =
+            new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<SupertypeKey, Type> supertypes = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the first instance seen of a type equal to {@code type}, so that equal types found on
+     * different methods are one object and compare by identity first.
+     */
+    Type canonicalize(Type type) {
+        if (type == null) return null;
+        Type existing = canonicalTypes.putIfAbsent(type, type);
+        return existing != null ? existing : type;
+    }
+
+    /**
+     * Like {@link Utils#getParameterUpperBound}.
+     */
+    Type getParameterUpperBound(int index, ParameterizedType type) {
+        Type[] bounds = upperBounds.get(type);
+        if (bounds == null) {
+            // getActualTypeArguments每次都会复制数组，结果缓存起来
+            Type[] types = type.getActualTypeArguments();
+            bounds = new Type[types.length];
+            for (int i = 0; i < types.length; i++) {
+                Type paramType = types[i];
+                if (paramType instanceof WildcardType) {
+                    paramType = ((WildcardType) paramType).getUpperBounds()[0];
+                }
+                bounds[i] = canonicalize(paramType);
+            }
+            upperBounds.putIfAbsent(type, bounds);
+        }
+        if (index < 0 || index >= bounds.length) {
+            throw new IllegalArgumentException(
+                    "Index " + index + " not in range [0," + bounds.length + ") for " + type);
+        }
+        return bounds[index];
+    }
+
+    /**
+     * Like {@link Utils#getCallResponseType}.
+     */
+    Type getCallResponseType(Type returnType) {
+        if (!(returnType instanceof ParameterizedType)) {
+            throw new IllegalArgumentException(
+                    "Call return type must be parameterized as Call<Foo> or Call<? extends Foo>");
+        }
+        return getParameterUpperBound(0, (ParameterizedType) returnType);
+    }
+
+    /**
+     * Like {@link Utils#hasUnresolvableType}.
+     */
+    boolean hasUnresolvableType(Type type) {
+        if (type instanceof Class<?>) {
+            return false;
+        }
+        if (!(type instanceof ParameterizedType) && !(type instanceof GenericArrayType)) {
+            // 类型变量、通配符或者不支持的类型，不需要缓存
+            return Utils.hasUnresolvableType(type);
+        }
+        Boolean result = unresolvableTypes.get(type);
+        if (result == null) {
+            result = Utils.hasUnresolvableType(type);
+            unresolvableTypes.putIfAbsent(type, result);
+        }
+        return result;
+    }
+
+    /**
+     * Like {@link Utils#getSupertype}.
+     */
+    Type getSupertype(Type context, Class<?> contextRawType, Class<?> supertype) {
+        // contextRawType由context决定，不需要放入key中
+        SupertypeKey key = new SupertypeKey(context, supertype);
+        Type result = supertypes.get(key);
+        if (result == null) {
+            result = canonicalize(Utils.getSupertype(context, contextRawType, supertype));
+            supertypes.putIfAbsent(key, result);
+        }
+        return result;
+    }
+
+    private static final class SupertypeKey {
+        private final Type context;
+        private final Class<?> supertype;
+
+        SupertypeKey(Type context, Class<?> supertype) {
+            this.context = context;
+            this.supertype = supertype;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof SupertypeKey)) return false;
+            SupertypeKey other = (SupertypeKey) o;
+            return supertype == other.supertype && Utils.equals(context, other.context);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * context.hashCode() + supertype.hashCode();
+        }
+    }
+}
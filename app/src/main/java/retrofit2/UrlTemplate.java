@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2017 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package retrofit2;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+
+import static retrofit2.ServiceMethod.PARAM_URL_REGEX;
+
+/**
+ * A relative URL such as {@code repos/{owner}/{repo}/contributors} compiled once into literal
+ * chunks and parameter slots so that each request can fill the slots in a single pass.
+ * <p>
+ * 预编译的url模板：literals[0] slot[0] literals[1] slot[1] ... literals[n]
+ */
+final class UrlTemplate {
+    // 原始的url，用于错误信息
+    final String source;
+    // 常量片段，比slots多一个
+    private final String[] literals;
+    // 每个slot对应的参数名下标，同一个参数名可以出现多次
+    private final int[] slots;
+    // 去重后的参数名，按出现顺序排列
+    private final String[] names;
+    // 所有常量片段的总长度，用于预估StringBuilder的大小
+    private final int literalLength;
+
+    private UrlTemplate(String source, String[] literals, int[] slots, String[] names) {
+        this.source = source;
+        this.literals = literals;
+        this.slots = slots;
+        this.names = names;
+        int length = 0;
+        for (String literal : literals) {
+            length += literal.length();
+        }
+        this.literalLength = length;
+    }
+
+    static UrlTemplate parse(String relativeUrl) {
+        List<String> literals = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        List<Integer> slots = new ArrayList<>();
+
+        Matcher m = PARAM_URL_REGEX.matcher(relativeUrl);
+        int literalStart = 0;
+        while (m.find()) {
+            literals.add(relativeUrl.substring(literalStart, m.start()));
+            String name = m.group(1);
+            int index = names.indexOf(name);
+            if (index == -1) {
+                index = names.size();
+                names.add(name);
+            }
+            slots.add(index);
+            literalStart = m.end();
+        }
+        literals.add(relativeUrl.substring(literalStart));
+
+        int[] slotArray = new int[slots.size()];
+        for (int i = 0; i < slotArray.length; i++) {
+            slotArray[i] = slots.get(i);
+        }
+        return new UrlTemplate(relativeUrl, literals.toArray(new String[literals.size()]), slotArray,
+                names.toArray(new String[names.size()]));
+    }
+
+    /**
+     * Returns the index of the parameter {@code name}, or -1 if the URL does not contain it.
+     */
+    int indexOf(String name) {
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equals(name)) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * The number of distinct parameter names in this template.
+     */
+    int nameCount() {
+        return names.length;
+    }
+
+    /**
+     * Returns true if this URL has no parameter slots.
+     */
+    boolean isStatic() {
+        return slots.length == 0;
+    }
+
+    /**
+     * The length of the leading part of this URL which never changes: everything up to and
+     * including the last {@code /} before the first slot, or the whole URL if it has no slots.
+     */
+    int staticPrefixLength() {
+        if (slots.length == 0) {
+            return source.length();
+        }
+        return literals[0].lastIndexOf('/') + 1;
+    }
+
+    /**
+     * Fills every slot with the value at its name index, encoded as a path segment while it is
+     * appended; {@code encoded} tells which values are already percent-encoded. Slots without a
+     * value keep their {@code {name}} placeholder.
+     */
+    String expand(String[] values, boolean[] encoded) {
+        return expand(values, encoded, 0);
+    }
+
+    /**
+     * Like {@link #expand(String[], boolean[])} but skips the first {@code offset} characters,
+     * which must not go past the {@linkplain #staticPrefixLength() static prefix}.
+     */
+    String expand(String[] values, boolean[] encoded, int offset) {
+        if (slots.length == 0) {
+            return offset == 0 ? literals[0] : literals[0].substring(offset);
+        }
+        // 编码后可能更长，StringBuilder会自动扩容
+        int length = literalLength - offset;
+        for (int i = 0; i < slots.length; i++) {
+            String value = values[slots[i]];
+            length += value != null ? value.length() : names[slots[i]].length() + 2;
+        }
+
+        StringBuilder out = new StringBuilder(length);
+        out.append(literals[0], offset, literals[0].length());
+        for (int i = 0; i < slots.length; i++) {
+            if (i > 0) out.append(literals[i]);
+            String value = values[slots[i]];
+            if (value != null) {
+                RequestBuilder.canonicalizeForPath(out, value, encoded[slots[i]]);
+            } else {
+                out.append('{').append(names[slots[i]]).append('}');
+            }
+        }
+        return out.append(literals[slots.length]).toString();
+    }
+
+    @Override
+    public String toString() {
+        return source;
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2017 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package retrofit2.adapter.cache;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+/**
+ * Keep the converted successful responses of this method in memory for {@link #maxAgeSeconds()},
+ * so that identical calls skip both the network and the converter. Optionally serve them for
+ * {@link #staleWhileRevalidateSeconds()} longer while refreshing in the background. Requires
+ * {@link CachingCallAdapterFactory}.
+ * <pre><code>
+ * &#64;Cached(maxAgeSeconds = 60, maxEntries = 20)
+ * &#64;GET("repos/{owner}/{repo}/contributors")
+ * Call&lt;List&lt;Contributor&gt;&gt; contributors(@Path("owner") String owner, @Path("repo") String repo);
+ * </code></pre>
+ */
+@Documented
+@Target(METHOD)
+@Retention(RUNTIME)
+public @interface Cached {
+    /**
+     * How long a response stays usable after it was received.
+     */
+    int maxAgeSeconds();
+
+    /**
+     * The most responses kept for this method; the least recently used one is evicted first.
+     */
+    int maxEntries() default 100;
+
+    /**
+     * How long after {@link #maxAgeSeconds()} an expired response is still returned at once while
+     * a fresh one is fetched in the background. The refresh sends the response's {@code ETag} as
+     * {@code If-None-Match}, so an unchanged resource costs a {@code 304} and no conversion.
+     * Defaults to 0: expired responses are never returned.
+     */
+    int staleWhileRevalidateSeconds() default 0;
+}
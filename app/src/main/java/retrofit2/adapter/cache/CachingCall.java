@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2017 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package retrofit2.adapter.cache;
+
+import java.io.IOException;
+
+import okhttp3.Request;
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+
+/**
+ * Answers from the {@link ResponseCache} when it can, otherwise runs the delegate and stores a
+ * successful response.
+ * <p>
+ * 命中缓存时直接返回，否则执行请求并缓存成功的应答
+ */
+final class CachingCall<T> implements Call<T> {
+    private final Call<T> delegate;
+    private final ResponseCache<T> cache;
+    private boolean executed;
+
+    CachingCall(Call<T> delegate, ResponseCache<T> cache) {
+        this.delegate = delegate;
+        this.cache = cache;
+    }
+
+    @Override
+    public Response<T> execute() throws IOException {
+        markExecuted();
+        final Request request = buildRequest();
+        final String key = request != null ? cache.key(request) : null;
+        if (key != null) {
+            Response<T> cached = cache.get(key, request);
+            if (cached != null) {
+                if (delegate.isCanceled()) throw new IOException("Canceled");
+                return cached;
+            }
+        }
+        Response<T> response = delegate.execute();
+        if (key != null) {
+            cache.put(key, response);
+        }
+        return response;
+    }
+
+    @Override
+    public void enqueue(final Callback<T> callback) {
+        if (callback == null) throw new NullPointerException("callback == null");
+        markExecuted();
+        final Request request = buildRequest();
+        final String key = request != null ? cache.key(request) : null;
+        if (key != null) {
+            Response<T> cached = cache.get(key, request);
+            if (cached != null) {
+                if (delegate.isCanceled()) {
+                    callback.onFailure(this, new IOException("Canceled"));
+                } else {
+                    callback.onResponse(this, cached);
+                }
+                return;
+            }
+        }
+        delegate.enqueue(new Callback<T>() {
+            @Override
+            public void onResponse(Call<T> call, Response<T> response) {
+                if (key != null) {
+                    cache.put(key, response);
+                }
+                callback.onResponse(CachingCall.this, response);
+            }
+
+            @Override
+            public void onFailure(Call<T> call, Throwable t) {
+                callback.onFailure(CachingCall.this, t);
+            }
+        });
+    }
+
+    /**
+     * Returns the request, or null if it cannot be built. Such a call is not cached; the delegate
+     * runs and reports the failure the way it always does: thrown from {@link #execute()} or
+     * passed to {@link Callback#onFailure}.
+     */
+    private Request buildRequest() {
+        try {
+            return delegate.request();
+        } catch (Throwable t) {
+            return null;
+        }
+    }
+
+    private synchronized void markExecuted() {
+        if (executed) throw new IllegalStateException("Already executed.");
+        executed = true;
+    }
+
+    @Override
+    public synchronized boolean isExecuted() {
+        return executed;
+    }
+
+    @Override
+    public void cancel() {
+        delegate.cancel();
+    }
+
+    @Override
+    public boolean isCanceled() {
+        return delegate.isCanceled();
+    }
+
+    @SuppressWarnings("CloneDoesntCallSuperClone") // Performing deep clone.
+    @Override
+    public Call<T> clone() {
+        return new CachingCall<>(delegate.clone(), cache);
+    }
+
+    @Override
+    public Request request() {
+        return delegate.request();
+    }
+}
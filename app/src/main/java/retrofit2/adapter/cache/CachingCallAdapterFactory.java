@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2017 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package retrofit2.adapter.cache;
+
+import java.io.Closeable;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.ResponseBody;
+import retrofit2.Call;
+import retrofit2.CallAdapter;
+import retrofit2.Converter;
+import retrofit2.Retrofit;
+import retrofit2.http.Streaming;
+
+/**
+ * A {@linkplain CallAdapter.Factory call adapter factory} which caches the converted responses of
+ * methods annotated with {@link Cached}. OkHttp's own cache still runs the converter on every
+ * hit; this one hands out the {@link retrofit2.Response} that was already converted.
+ * <p>
+ * Each method has its own LRU cache keyed by the HTTP method and URL of the request, which are
+ * built from the arguments, and the values of the headers given to {@link #create(String...)}.
+ * Other headers are not part of the key. Only requests without a body are cached, and only
+ * successful (2xx) responses are stored. Cached bodies are shared instances and must not be
+ * mutated by callers, so methods returning a {@link ResponseBody} or any other
+ * {@link Closeable} body, or annotated with {@link Streaming}, cannot be {@link Cached}.
+ * <p>
+ * Add this factory before any other call adapter factory. It delegates to the next factory able
+ * to handle the return type, and returns null for methods without {@link Cached}.
+ * <p>
+ * 在内存中缓存转换后的应答，命中时不需要再请求网络和解析
+ */
+public final class CachingCallAdapterFactory extends CallAdapter.Factory {
+    /**
+     * Create an instance which also keys responses on the values of {@code keyHeaders}, such as
+     * {@code Authorization} or {@code Accept-Language}, whenever they change the response.
+     */
+    public static CachingCallAdapterFactory create(String... keyHeaders) {
+        if (keyHeaders == null) throw new NullPointerException("keyHeaders == null");
+        for (String header : keyHeaders) {
+            if (header == null) throw new NullPointerException("keyHeaders contains null");
+        }
+        return new CachingCallAdapterFactory(keyHeaders.clone());
+    }
+
+    private final String[] keyHeaders;
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    private CachingCallAdapterFactory(String[] keyHeaders) {
+        this.keyHeaders = keyHeaders;
+    }
+
+    @Override
+    public CallAdapter<?, ?> get(Type returnType, Annotation[] annotations, Retrofit retrofit) {
+        Cached cached = null;
+        for (Annotation annotation : annotations) {
+            if (annotation instanceof Cached) {
+                cached = (Cached) annotation;
+                break;
+            }
+        }
+        if (cached == null) {
+            return null;
+        }
+        if (cached.maxAgeSeconds() <= 0) {
+            throw new IllegalArgumentException("@Cached maxAgeSeconds must be positive.");
+        }
+        if (cached.maxEntries() <= 0) {
+            throw new IllegalArgumentException("@Cached maxEntries must be positive.");
+        }
+        if (cached.staleWhileRevalidateSeconds() < 0) {
+            throw new IllegalArgumentException(
+                    "@Cached staleWhileRevalidateSeconds must not be negative.");
+        }
+        for (Annotation annotation : annotations) {
+            if (annotation instanceof Streaming) {
+                throw new IllegalArgumentException("@Cached methods cannot be @Streaming.");
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        CallAdapter<Object, ?> delegate =
+                (CallAdapter<Object, ?>) retrofit.nextCallAdapter(this, returnType, annotations);
+        // ResponseBody等Closeable的body只能读一次，不能缓存后多次返回
+        Type responseType = delegate.responseType();
+        if (Closeable.class.isAssignableFrom(getRawType(responseType))) {
+            throw new IllegalArgumentException(
+                    "@Cached methods cannot return a Closeable body: " + responseType);
+        }
+        Revalidator<Object> revalidator = null;
+        if (cached.staleWhileRevalidateSeconds() > 0) {
+            // 与OkHttpCall使用同一个Converter
+            Converter<ResponseBody, Object> converter =
+                    retrofit.responseBodyConverter(responseType, annotations);
+            revalidator = new Revalidator<>(retrofit.callFactory(), converter);
+        }
+        ResponseCache<Object> cache = new ResponseCache<>(cached.maxEntries(),
+                TimeUnit.SECONDS.toNanos(cached.maxAgeSeconds()),
+                TimeUnit.SECONDS.toNanos(cached.staleWhileRevalidateSeconds()), revalidator, this,
+                keyHeaders);
+        return new CachingCallAdapter<>(delegate, cache);
+    }
+
+    /**
+     * The number of calls answered from a cache, including stale responses returned while they
+     * are refreshed.
+     */
+    public long hitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * The number of cacheable calls which had to go to the network.
+     */
+    public long missCount() {
+        return missCount.get();
+    }
+
+    /**
+     * The number of responses evicted to stay within {@link Cached#maxEntries()}. Expired
+     * responses are not counted.
+     */
+    public long evictionCount() {
+        return evictionCount.get();
+    }
+
+    void recordHit() {
+        hitCount.incrementAndGet();
+    }
+
+    void recordMiss() {
+        missCount.incrementAndGet();
+    }
+
+    void recordEviction() {
+        evictionCount.incrementAndGet();
+    }
+
+    private static final class CachingCallAdapter<R, T> implements CallAdapter<R, T> {
+        private final CallAdapter<R, T> delegate;
+        private final ResponseCache<R> cache;
+
+        CachingCallAdapter(CallAdapter<R, T> delegate, ResponseCache<R> cache) {
+            this.delegate = delegate;
+            this.cache = cache;
+        }
+
+        @Override
+        public Type responseType() {
+            return delegate.responseType();
+        }
+
+        @Override
+        public T adapt(Call<R> call) {
+            return delegate.adapt(new CachingCall<>(call, cache));
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2017 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package retrofit2.adapter.cache;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import okhttp3.Request;
+import retrofit2.Response;
+
+/**
+ * The LRU cache of one service method. Entries expire {@code maxAgeNanos} after they were stored;
+ * for {@code staleNanos} after that they are still returned, and the first such lookup starts a
+ * background {@link Revalidator revalidation}.
+ * <p>
+ * 一个API方法的LRU缓存
+ */
+final class ResponseCache<T> {
+    private final long maxAgeNanos;
+    private final long staleNanos;
+    // staleNanos为0时为null
+    private final Revalidator<T> revalidator;
+    private final CachingCallAdapterFactory stats;
+    private final String[] keyHeaders;
+    // accessOrder为true，按访问顺序排列，第一个是最久没有使用的
+    private final LinkedHashMap<String, CacheEntry<T>> entries;
+
+    ResponseCache(final int maxEntries, long maxAgeNanos, long staleNanos,
+                  Revalidator<T> revalidator, final CachingCallAdapterFactory stats,
+                  String[] keyHeaders) {
+        this.maxAgeNanos = maxAgeNanos;
+        this.staleNanos = staleNanos;
+        this.revalidator = revalidator;
+        this.stats = stats;
+        this.keyHeaders = keyHeaders;
+        this.entries = new LinkedHashMap<String, CacheEntry<T>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CacheEntry<T>> eldest) {
+                if (size() <= maxEntries) return false;
+                stats.recordEviction();
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Returns the key of {@code request}, or null if it must not be cached. Only the values of
+     * {@code keyHeaders} are part of the key; other headers, such as tracing IDs, do not split
+     * the cache.
+     */
+    String key(Request request) {
+        if (request.body() != null) return null;
+        StringBuilder key = new StringBuilder(request.method()).append(' ').append(request.url());
+        for (String name : keyHeaders) {
+            List<String> values = request.headers(name);
+            key.append('\n').append(name).append(':').append(values);
+        }
+        return key.toString();
+    }
+
+    /**
+     * Returns the usable response stored for {@code key} and records a hit, or records a miss and
+     * returns null. A stale response starts a revalidation of {@code request} unless one is
+     * already running.
+     */
+    Response<T> get(String key, Request request) {
+        Response<T> response = null;
+        CacheEntry<T> revalidate = null;
+        synchronized (this) {
+            CacheEntry<T> entry = entries.get(key);
+            if (entry != null) {
+                long age = System.nanoTime() - entry.storedAtNanos;
+                if (age < maxAgeNanos) {
+                    response = entry.response;
+                } else if (age - maxAgeNanos < staleNanos) {
+                    response = entry.response;
+                    if (!entry.revalidating) {
+                        entry.revalidating = true;
+                        revalidate = entry;
+                    }
+                } else {
+                    entries.remove(key);
+                }
+            }
+        }
+        if (revalidate != null) {
+            revalidator.revalidate(this, key, request, revalidate);
+        }
+        if (response != null) {
+            stats.recordHit();
+        } else {
+            stats.recordMiss();
+        }
+        return response;
+    }
+
+    /**
+     * Stores {@code response} if it is successful.
+     */
+    void put(String key, Response<T> response) {
+        if (!response.isSuccessful()) return;
+        CacheEntry<T> entry = new CacheEntry<>(response, System.nanoTime());
+        synchronized (this) {
+            entries.put(key, entry);
+        }
+    }
+
+    /**
+     * The server confirmed that {@code entry} is unchanged: it is fresh again.
+     */
+    synchronized void revalidated(String key, CacheEntry<T> entry) {
+        if (entries.get(key) == entry) {
+            entries.put(key, new CacheEntry<>(entry.response, System.nanoTime()));
+        }
+    }
+
+    /**
+     * The refresh of {@code entry} failed; a later lookup may try again.
+     */
+    synchronized void revalidationFailed(CacheEntry<T> entry) {
+        entry.revalidating = false;
+    }
+
+    static final class CacheEntry<T> {
+        final Response<T> response;
+        final long storedAtNanos;
+        // 正在后台刷新，由ResponseCache的锁保护
+        boolean revalidating;
+
+        CacheEntry(Response<T> response, long storedAtNanos) {
+            this.response = response;
+            this.storedAtNanos = storedAtNanos;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2017 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package retrofit2.adapter.cache;
+
+import java.io.IOException;
+
+import okhttp3.Request;
+import okhttp3.ResponseBody;
+import retrofit2.Converter;
+import retrofit2.Response;
+
+/**
+ * Refreshes a stale cache entry in the background. The request of the call which found the entry
+ * is sent again with the entry's {@code ETag} as {@code If-None-Match}: a {@code 304} only marks
+ * the entry fresh, a 2xx response is converted with the method's converter and replaces it.
+ * <p>
+ * The request goes straight to the OkHttp call factory of the {@link retrofit2.Retrofit}
+ * instance, because a {@link retrofit2.Call} offers no way to add a header to its request.
+ * <p>
+ * 后台刷新过期的缓存，未修改时服务器返回304，不需要再解析
+ */
+final class Revalidator<T> {
+    private final okhttp3.Call.Factory callFactory;
+    private final Converter<ResponseBody, T> converter;
+
+    Revalidator(okhttp3.Call.Factory callFactory, Converter<ResponseBody, T> converter) {
+        this.callFactory = callFactory;
+        this.converter = converter;
+    }
+
+    void revalidate(final ResponseCache<T> cache, final String key, Request request,
+                    final ResponseCache.CacheEntry<T> entry) {
+        Request.Builder builder = request.newBuilder();
+        String etag = entry.response.headers().get("ETag");
+        if (etag != null) {
+            builder.header("If-None-Match", etag);
+        }
+        callFactory.newCall(builder.build()).enqueue(new okhttp3.Callback() {
+            @Override
+            public void onFailure(okhttp3.Call call, IOException e) {
+                cache.revalidationFailed(entry);
+            }
+
+            @Override
+            public void onResponse(okhttp3.Call call, okhttp3.Response rawResponse) {
+                ResponseBody rawBody = rawResponse.body();
+                try {
+                    int code = rawResponse.code();
+                    if (code == 304) {
+                        cache.revalidated(key, entry);
+                    } else if (rawResponse.isSuccessful()) {
+                        // 204 No Content  205 Reset Content
+                        T body = code == 204 || code == 205 ? null : converter.convert(rawBody);
+                        // Remove the body's source (the only stateful object) as OkHttpCall does.
+                        okhttp3.Response stripped = rawResponse.newBuilder().body(null).build();
+                        cache.put(key, Response.success(body, stripped));
+                    } else {
+                        cache.revalidationFailed(entry);
+                    }
+                } catch (IOException | RuntimeException e) {
+                    cache.revalidationFailed(entry);
+                } finally {
+                    rawBody.close();
+                }
+            }
+        });
+    }
+}
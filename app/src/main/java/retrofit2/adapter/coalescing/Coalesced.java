@@ -0,0 +1,39 @@
+/*
+ * Copyright (C) 2017 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package retrofit2.adapter.coalescing;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+/**
+ * Let identical {@code GET} and {@code HEAD} calls of this method share one HTTP request while it
+ * is in flight. Every caller receives the same converted body, so only use it for bodies which
+ * can be shared and are not mutated. Requires {@link CoalescingCallAdapterFactory}.
+ * <pre><code>
+ * &#64;Coalesced
+ * &#64;GET("repos/{owner}/{repo}/contributors")
+ * Call&lt;List&lt;Contributor&gt;&gt; contributors(@Path("owner") String owner, @Path("repo") String repo);
+ * </code></pre>
+ */
+@Documented
+@Target(METHOD)
+@Retention(RUNTIME)
+public @interface Coalesced {
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright (C) 2017 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package retrofit2.adapter.coalescing;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+
+import okhttp3.Request;
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+
+/**
+ * A call which, for coalescable requests, subscribes to an {@link InFlightCall} instead of
+ * running its own delegate. Other requests run the delegate directly.
+ * <p>
+ * 可以合并的请求加入正在进行中的请求，其他请求直接执行
+ */
+final class CoalescingCall<T> implements Call<T> {
+    private final Call<T> delegate;
+    private final CoalescingCallAdapterFactory factory;
+    private final ConcurrentHashMap<String, InFlightCall<T>> inFlight;
+
+    private boolean executed;
+    // 请求可以合并，delegate不会单独执行
+    private boolean coalesced;
+    private volatile boolean canceled;
+    // 加入的请求，不合并时为null
+    private InFlightCall<T> joined;
+    // enqueue时的回调，execute时为null
+    private Callback<T> callback;
+    // execute时等待结果
+    private final CountDownLatch latch = new CountDownLatch(1);
+    private boolean delivered;
+    private Response<T> response;
+    private Throwable failure;
+
+    CoalescingCall(Call<T> delegate, CoalescingCallAdapterFactory factory,
+                   ConcurrentHashMap<String, InFlightCall<T>> inFlight) {
+        this.delegate = delegate;
+        this.factory = factory;
+        this.inFlight = inFlight;
+    }
+
+    @Override
+    public Response<T> execute() throws IOException {
+        String key = markExecuted();
+        if (key == null) {
+            return delegate.execute();
+        }
+        join(key);
+
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            cancel();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a coalesced call.");
+        }
+        if (failure != null) {
+            if (failure instanceof IOException) throw (IOException) failure;
+            if (failure instanceof RuntimeException) throw (RuntimeException) failure;
+            if (failure instanceof Error) throw (Error) failure;
+            throw new RuntimeException(failure);
+        }
+        return response;
+    }
+
+    @Override
+    public void enqueue(final Callback<T> callback) {
+        if (callback == null) throw new NullPointerException("callback == null");
+        String key = markExecuted();
+        if (key == null) {
+            delegate.enqueue(new Callback<T>() {
+                @Override
+                public void onResponse(Call<T> call, Response<T> response) {
+                    callback.onResponse(CoalescingCall.this, response);
+                }
+
+                @Override
+                public void onFailure(Call<T> call, Throwable t) {
+                    callback.onFailure(CoalescingCall.this, t);
+                }
+            });
+            return;
+        }
+        synchronized (this) {
+            this.callback = callback;
+        }
+        join(key);
+    }
+
+    /**
+     * Returns the key of the request, or null if it is not coalesced. A request which cannot be
+     * built is not coalesced, so that the delegate reports the failure the way it always does:
+     * thrown from {@link #execute()} or passed to {@link Callback#onFailure}.
+     */
+    private String markExecuted() {
+        synchronized (this) {
+            if (executed) throw new IllegalStateException("Already executed.");
+            executed = true;
+        }
+        Request request;
+        try {
+            request = delegate.request();
+        } catch (Throwable t) {
+            // 请求无法创建时直接执行delegate，由它像普通的调用一样报告错误
+            return null;
+        }
+        String key = factory.key(request);
+        synchronized (this) {
+            coalesced = key != null;
+        }
+        return key;
+    }
+
+    private void join(String key) {
+        if (canceled) {
+            deliver(null, new IOException("Canceled"));
+            return;
+        }
+        while (true) {
+            InFlightCall<T> call = inFlight.get(key);
+            if (call == null) {
+                InFlightCall<T> created = new InFlightCall<>(inFlight, key, delegate);
+                created.subscribe(this);
+                if (inFlight.putIfAbsent(key, created) == null) {
+                    setJoined(created);
+                    created.start();
+                    return;
+                }
+            } else if (call.subscribe(this)) {
+                setJoined(call);
+                return;
+            } else {
+                // 已经完成，但还没有从map中移除
+                inFlight.remove(key, call);
+            }
+        }
+    }
+
+    private void setJoined(InFlightCall<T> call) {
+        boolean cancel;
+        synchronized (this) {
+            joined = call;
+            cancel = canceled;
+        }
+        // cancel()在加入之前被调用
+        if (cancel) cancel();
+    }
+
+    /**
+     * Receives the result of the joined call, or of this call being cancelled. Only the first
+     * result is kept.
+     */
+    void deliver(Response<T> response, Throwable failure) {
+        Callback<T> callback;
+        synchronized (this) {
+            if (delivered) return;
+            delivered = true;
+            this.response = response;
+            this.failure = failure;
+            callback = this.callback;
+        }
+        if (callback == null) {
+            latch.countDown();
+        } else if (response != null) {
+            callback.onResponse(this, response);
+        } else {
+            callback.onFailure(this, failure);
+        }
+    }
+
+    @Override
+    public synchronized boolean isExecuted() {
+        return executed;
+    }
+
+    @Override
+    public void cancel() {
+        canceled = true;
+        InFlightCall<T> joined;
+        boolean coalesced;
+        synchronized (this) {
+            joined = this.joined;
+            coalesced = this.coalesced;
+        }
+        if (joined == null) {
+            // 正在加入时由setJoined再次取消；delegate可能是共用的请求，不能直接取消
+            if (!coalesced) delegate.cancel();
+            return;
+        }
+        if (joined.unsubscribe(this)) {
+            deliver(null, new IOException("Canceled"));
+        }
+    }
+
+    @Override
+    public boolean isCanceled() {
+        return canceled || delegate.isCanceled();
+    }
+
+    @SuppressWarnings("CloneDoesntCallSuperClone") // Performing deep clone.
+    @Override
+    public Call<T> clone() {
+        return new CoalescingCall<>(delegate.clone(), factory, inFlight);
+    }
+
+    @Override
+    public Request request() {
+        return delegate.request();
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2017 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package retrofit2.adapter.coalescing;
+
+import java.io.Closeable;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import okhttp3.Request;
+import okhttp3.ResponseBody;
+import retrofit2.Call;
+import retrofit2.CallAdapter;
+import retrofit2.Retrofit;
+import retrofit2.http.Streaming;
+
+/**
+ * A {@linkplain CallAdapter.Factory call adapter factory} which lets identical {@code GET} and
+ * {@code HEAD} calls of methods annotated with {@link Coalesced} share one HTTP request while it
+ * is in flight. Calls
+ * are identical when their method, URL and the values of the headers given to
+ * {@link #create(String...)} are equal.
+ * <p>
+ * The first call sends the request; calls made before its response arrives attach to it and all
+ * receive the same converted body. An error body is read once and each caller gets its own copy.
+ * Cancelling one caller detaches only that caller; the request itself is cancelled once every
+ * caller has cancelled. Calls with other HTTP methods are passed through unchanged.
+ * <p>
+ * A body which can only be read once cannot be shared. Methods returning a
+ * {@link ResponseBody}, any other {@link Closeable} body such as
+ * {@code retrofit2.converter.gson.JsonArrayCursor}, or annotated with {@link Streaming} are never
+ * coalesced, even when annotated with {@link Coalesced}.
+ * <p>
+ * Add this factory before any other call adapter factory. It delegates to the next factory able
+ * to handle the return type, so it works with {@code Call<T>} as well as other adapted types, and
+ * returns null for methods which are not coalesced. Coalesced bodies are shared instances and
+ * must not be mutated by callers.
+ * <p>
+ * 相同的GET请求正在进行中时，后来的调用不再发送新的请求，而是共用同一个请求的结果
+ */
+public final class CoalescingCallAdapterFactory extends CallAdapter.Factory {
+    /**
+     * Create an instance which also compares the values of {@code keyHeaders}, such as
+     * {@code Authorization}, when deciding whether two calls are identical.
+     */
+    public static CoalescingCallAdapterFactory create(String... keyHeaders) {
+        if (keyHeaders == null) throw new NullPointerException("keyHeaders == null");
+        for (String header : keyHeaders) {
+            if (header == null) throw new NullPointerException("keyHeaders contains null");
+        }
+        return new CoalescingCallAdapterFactory(keyHeaders.clone());
+    }
+
+    private final String[] keyHeaders;
+
+    private CoalescingCallAdapterFactory(String[] keyHeaders) {
+        this.keyHeaders = keyHeaders;
+    }
+
+    @Override
+    public CallAdapter<?, ?> get(Type returnType, Annotation[] annotations, Retrofit retrofit) {
+        boolean coalesced = false;
+        for (Annotation annotation : annotations) {
+            if (annotation instanceof Streaming) {
+                // 流式读取的body只能读一次
+                return null;
+            }
+            if (annotation instanceof Coalesced) {
+                coalesced = true;
+            }
+        }
+        if (!coalesced) {
+            return null;
+        }
+
+        @SuppressWarnings("unchecked")
+        CallAdapter<Object, ?> delegate =
+                (CallAdapter<Object, ?>) retrofit.nextCallAdapter(this, returnType, annotations);
+        // ResponseBody、JsonArrayCursor等Closeable的body不能共享
+        if (Closeable.class.isAssignableFrom(getRawType(delegate.responseType()))) {
+            return null;
+        }
+        return new CoalescingCallAdapter<>(delegate, this);
+    }
+
+    /**
+     * Returns the key of {@code request}, or null if it must not be coalesced.
+     */
+    String key(Request request) {
+        String method = request.method();
+        if (!"GET".equals(method) && !"HEAD".equals(method)) {
+            return null;
+        }
+        StringBuilder key = new StringBuilder(method).append(' ').append(request.url());
+        for (String name : keyHeaders) {
+            List<String> values = request.headers(name);
+            key.append('\n').append(name).append(':').append(values);
+        }
+        return key.toString();
+    }
+
+    /**
+     * One per service method, so that only calls converting to the same type are coalesced.
+     */
+    private static final class CoalescingCallAdapter<R, T> implements CallAdapter<R, T> {
+        private final CallAdapter<R, T> delegate;
+        private final CoalescingCallAdapterFactory factory;
+        // key 请求的key; value 正在进行中的请求
+        private final ConcurrentHashMap<String, InFlightCall<R>> inFlight =
+                new ConcurrentHashMap<>();
+
+        CoalescingCallAdapter(CallAdapter<R, T> delegate, CoalescingCallAdapterFactory factory) {
+            this.delegate = delegate;
+            this.factory = factory;
+        }
+
+        @Override
+        public Type responseType() {
+            return delegate.responseType();
+        }
+
+        @Override
+        public T adapt(Call<R> call) {
+            return delegate.adapt(new CoalescingCall<>(call, factory, inFlight));
+        }
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2017 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package retrofit2.adapter.coalescing;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import okhttp3.ResponseBody;
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+
+/**
+ * One HTTP request shared by every {@link CoalescingCall} subscribed to it. It is removed from the
+ * in-flight map as soon as it completes, so later calls send a new request.
+ * <p>
+ * 多个调用共用的一个请求
+ */
+final class InFlightCall<T> {
+    private final ConcurrentHashMap<String, InFlightCall<T>> inFlight;
+    private final String key;
+    private final Call<T> call;
+    private final List<CoalescingCall<T>> subscribers = new ArrayList<>();
+    // 已经完成，或者所有调用都已取消
+    private boolean done;
+
+    InFlightCall(ConcurrentHashMap<String, InFlightCall<T>> inFlight, String key, Call<T> call) {
+        this.inFlight = inFlight;
+        this.key = key;
+        this.call = call;
+    }
+
+    /**
+     * Adds {@code subscriber}, or returns false if this call has already completed.
+     */
+    synchronized boolean subscribe(CoalescingCall<T> subscriber) {
+        if (done) return false;
+        subscribers.add(subscriber);
+        return true;
+    }
+
+    /**
+     * Removes {@code subscriber}, cancelling the request if it was the last one. Returns false if
+     * the result was already handed to it.
+     */
+    boolean unsubscribe(CoalescingCall<T> subscriber) {
+        boolean last;
+        synchronized (this) {
+            if (done || !subscribers.remove(subscriber)) return false;
+            last = subscribers.isEmpty();
+            if (last) done = true;
+        }
+        if (last) {
+            inFlight.remove(key, this);
+            call.cancel();
+        }
+        return true;
+    }
+
+    void start() {
+        call.enqueue(new Callback<T>() {
+            @Override
+            public void onResponse(Call<T> call, Response<T> response) {
+                complete(response, null);
+            }
+
+            @Override
+            public void onFailure(Call<T> call, Throwable t) {
+                complete(null, t);
+            }
+        });
+    }
+
+    private void complete(Response<T> response, Throwable failure) {
+        List<CoalescingCall<T>> targets;
+        synchronized (this) {
+            done = true;
+            targets = new ArrayList<>(subscribers);
+            subscribers.clear();
+        }
+        inFlight.remove(key, this);
+        if (targets.isEmpty()) return;
+
+        // 错误消息体只能读取一次，读出来之后给每个调用一份
+        byte[] errorBytes = null;
+        ResponseBody errorBody = response != null ? response.errorBody() : null;
+        if (errorBody != null) {
+            try {
+                errorBytes = errorBody.bytes();
+            } catch (IOException e) {
+                response = null;
+                failure = e;
+            } finally {
+                errorBody.close();
+            }
+        }
+
+        for (CoalescingCall<T> target : targets) {
+            if (errorBytes != null) {
+                target.deliver(Response.<T>error(
+                        ResponseBody.create(errorBody.contentType(), errorBytes), response.raw()),
+                        null);
+            } else {
+                target.deliver(response, failure);
+            }
+        }
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2017 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package retrofit2.adapter.hedging;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+/**
+ * Send a second, identical request when a call of this method has not completed after a delay,
+ * and use whichever response arrives first. Only {@code GET} and {@code HEAD} requests are
+ * hedged. Requires {@link HedgingCallAdapterFactory}.
+ * <pre><code>
+ * &#64;Hedged(delayMillis = 150)
+ * &#64;GET("repos/{owner}/{repo}/contributors")
+ * Call&lt;List&lt;Contributor&gt;&gt; contributors(@Path("owner") String owner, @Path("repo") String repo);
+ * </code></pre>
+ */
+@Documented
+@Target(METHOD)
+@Retention(RUNTIME)
+public @interface Hedged {
+    /**
+     * How long to wait for the first request before sending the second one. Defaults to 0: wait
+     * for the 95th percentile of the latencies recently observed for this method. No request is
+     * hedged until enough latencies were observed.
+     */
+    long delayMillis() default 0;
+}
@@ -0,0 +1,325 @@
+/*
+ * Copyright (C) 2017 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package retrofit2.adapter.hedging;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Request;
+import okhttp3.ResponseBody;
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+
+/**
+ * Enqueues the delegate and, if it has not answered after the delay, a clone of it. The first
+ * successful response is delivered and the other attempt is cancelled. A failure or a non-2xx
+ * response is only delivered when no other attempt is left; the last outcome wins and a response
+ * it replaces is closed. {@link #execute()} enqueues the attempts as well and waits for the
+ * result. Requests other than {@code GET} and {@code HEAD} run the delegate directly.
+ * <p>
+ * 第一个请求超时未返回时再发送一个相同的请求，先返回的胜出，另一个被取消
+ */
+final class HedgingCall<T> implements Call<T> {
+    private final Call<T> delegate;
+    private final HedgingCallAdapterFactory factory;
+    private final long delayNanos;
+    // 固定delay时为null
+    private final LatencyTracker latencies;
+
+    private boolean executed;
+    // 请求可以重复发送
+    private boolean hedging;
+    private volatile boolean canceled;
+    // 已经有结果，之后的结果都被忽略
+    private boolean done;
+    // 还没有结果的请求数量
+    private int pending;
+    // 另一个请求还没有结果时收到的非2xx应答
+    private Response<T> deferred;
+    // start()的时间，用于统计整个调用的耗时
+    private long callStartNanos;
+    // 第二个请求，还没有发送时为null
+    private Call<T> hedge;
+    // 发送第二个请求的定时任务
+    private Future<?> timer;
+    // enqueue时的回调，execute时为null
+    private Callback<T> callback;
+    // execute时等待结果
+    private final CountDownLatch latch = new CountDownLatch(1);
+    private Response<T> response;
+    private Throwable failure;
+
+    HedgingCall(Call<T> delegate, HedgingCallAdapterFactory factory, long delayNanos,
+                LatencyTracker latencies) {
+        this.delegate = delegate;
+        this.factory = factory;
+        this.delayNanos = delayNanos;
+        this.latencies = latencies;
+    }
+
+    @Override
+    public Response<T> execute() throws IOException {
+        if (!markExecuted()) {
+            return delegate.execute();
+        }
+        start();
+
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            cancel();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a hedged call.");
+        }
+        if (failure != null) {
+            if (failure instanceof IOException) throw (IOException) failure;
+            if (failure instanceof RuntimeException) throw (RuntimeException) failure;
+            if (failure instanceof Error) throw (Error) failure;
+            throw new RuntimeException(failure);
+        }
+        return response;
+    }
+
+    @Override
+    public void enqueue(final Callback<T> callback) {
+        if (callback == null) throw new NullPointerException("callback == null");
+        if (!markExecuted()) {
+            delegate.enqueue(new Callback<T>() {
+                @Override
+                public void onResponse(Call<T> call, Response<T> response) {
+                    callback.onResponse(HedgingCall.this, response);
+                }
+
+                @Override
+                public void onFailure(Call<T> call, Throwable t) {
+                    callback.onFailure(HedgingCall.this, t);
+                }
+            });
+            return;
+        }
+        synchronized (this) {
+            this.callback = callback;
+        }
+        start();
+    }
+
+    /**
+     * Returns true if the request may be hedged. A request which cannot be built is not hedged, so
+     * that the delegate reports the failure the way it always does: thrown from
+     * {@link #execute()} or passed to {@link Callback#onFailure}.
+     */
+    private boolean markExecuted() {
+        synchronized (this) {
+            if (executed) throw new IllegalStateException("Already executed.");
+            executed = true;
+        }
+        String method;
+        try {
+            method = delegate.request().method();
+        } catch (Throwable t) {
+            method = null;
+        }
+        boolean hedging = "GET".equals(method) || "HEAD".equals(method);
+        synchronized (this) {
+            this.hedging = hedging;
+        }
+        return hedging;
+    }
+
+    private void start() {
+        factory.recordCall();
+        synchronized (this) {
+            pending = 1;
+            callStartNanos = System.nanoTime();
+        }
+        delegate.enqueue(new Attempt(false));
+
+        long delay = latencies != null ? latencies.percentileNanos() : delayNanos;
+        if (delay < 0) {
+            // 样本不足
+            return;
+        }
+        Future<?> timer = factory.scheduler().schedule(new Runnable() {
+            @Override
+            public void run() {
+                sendHedge();
+            }
+        }, delay, TimeUnit.NANOSECONDS);
+        boolean cancelTimer;
+        synchronized (this) {
+            cancelTimer = done || canceled;
+            if (!cancelTimer) this.timer = timer;
+        }
+        // 在定时任务保存之前已经有结果
+        if (cancelTimer) timer.cancel(false);
+    }
+
+    private void sendHedge() {
+        Call<T> hedge;
+        synchronized (this) {
+            if (done || canceled) return;
+            hedge = delegate.clone();
+            this.hedge = hedge;
+            pending++;
+        }
+        factory.recordHedge();
+        hedge.enqueue(new Attempt(true));
+    }
+
+    /**
+     * Receives the result of one of the requests.
+     */
+    private final class Attempt implements Callback<T> {
+        private final boolean isHedge;
+
+        Attempt(boolean isHedge) {
+            this.isHedge = isHedge;
+        }
+
+        @Override
+        public void onResponse(Call<T> call, Response<T> response) {
+            Response<T> discard;
+            Call<T> other = null;
+            Future<?> timer = null;
+            long startNanos = 0;
+            boolean wins = false;
+            synchronized (HedgingCall.this) {
+                if (done) {
+                    // 输掉的请求
+                    discard = response;
+                } else if (!response.isSuccessful() && --pending > 0) {
+                    // 另一个请求还可能成功，和失败一样处理
+                    discard = deferred;
+                    deferred = response;
+                } else {
+                    done = true;
+                    wins = true;
+                    discard = deferred;
+                    deferred = null;
+                    other = isHedge ? delegate : hedge;
+                    timer = HedgingCall.this.timer;
+                    startNanos = callStartNanos;
+                }
+            }
+            if (discard != null) closeQuietly(discard);
+            if (!wins) return;
+
+            if (timer != null) timer.cancel(false);
+            if (other != null) other.cancel();
+            if (response.isSuccessful()) {
+                // 整个调用的耗时，每个调用只记录一次
+                if (latencies != null) latencies.record(System.nanoTime() - startNanos);
+                if (isHedge) factory.recordHedgeWin();
+            }
+            deliver(response, null);
+        }
+
+        @Override
+        public void onFailure(Call<T> call, Throwable t) {
+            Response<T> discard;
+            Future<?> timer;
+            synchronized (HedgingCall.this) {
+                // 另一个请求还可能成功
+                if (done || --pending > 0) return;
+                done = true;
+                discard = deferred;
+                deferred = null;
+                timer = HedgingCall.this.timer;
+            }
+            if (discard != null) closeQuietly(discard);
+            if (timer != null) timer.cancel(false);
+            deliver(null, t);
+        }
+    }
+
+    /**
+     * Releases a response which is not delivered: its converted body when it holds a stream, such
+     * as a {@code @Streaming} {@link ResponseBody}, and its unread error body.
+     */
+    private static void closeQuietly(Response<?> response) {
+        Object body = response.body();
+        if (body instanceof Closeable) {
+            try {
+                ((Closeable) body).close();
+            } catch (IOException ignored) {
+            } catch (RuntimeException ignored) {
+            }
+        }
+        ResponseBody errorBody = response.errorBody();
+        if (errorBody != null) errorBody.close();
+    }
+
+    private void deliver(Response<T> response, Throwable failure) {
+        Callback<T> callback;
+        synchronized (this) {
+            this.response = response;
+            this.failure = failure;
+            callback = this.callback;
+        }
+        if (callback == null) {
+            latch.countDown();
+        } else if (response != null) {
+            callback.onResponse(this, response);
+        } else {
+            callback.onFailure(this, failure);
+        }
+    }
+
+    @Override
+    public synchronized boolean isExecuted() {
+        return executed;
+    }
+
+    @Override
+    public void cancel() {
+        Call<T> hedge;
+        Future<?> timer;
+        synchronized (this) {
+            canceled = true;
+            hedge = this.hedge;
+            timer = this.timer;
+        }
+        if (timer != null) timer.cancel(false);
+        delegate.cancel();
+        if (hedge != null) hedge.cancel();
+    }
+
+    @Override
+    public boolean isCanceled() {
+        if (canceled) return true;
+        // 输掉的请求被取消，不代表这个调用被取消
+        synchronized (this) {
+            if (hedging) return false;
+        }
+        return delegate.isCanceled();
+    }
+
+    @SuppressWarnings("CloneDoesntCallSuperClone") // Performing deep clone.
+    @Override
+    public Call<T> clone() {
+        return new HedgingCall<>(delegate.clone(), factory, delayNanos, latencies);
+    }
+
+    @Override
+    public Request request() {
+        return delegate.request();
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2017 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package retrofit2.adapter.hedging;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import retrofit2.Call;
+import retrofit2.CallAdapter;
+import retrofit2.Retrofit;
+
+/**
+ * A {@linkplain CallAdapter.Factory call adapter factory} which hedges the calls of methods
+ * annotated with {@link Hedged}: when the response has not arrived after the method's delay, a
+ * {@linkplain Call#clone() clone} of the call is sent as well. The first successful response wins
+ * and the other request is cancelled. This trims the latency tail caused by a single slow server at the
+ * cost of a few extra requests; only use it for methods which are safe to send twice.
+ * <p>
+ * A failed request or a non-2xx response does not end the call while the other request may
+ * still succeed; when neither succeeds, the outcome which arrived last is delivered. Responses
+ * which are not delivered are closed.
+ * <p>
+ * Add this factory before any other call adapter factory. It delegates to the next factory able
+ * to handle the return type, and returns null for methods without {@link Hedged}.
+ * <p>
+ * 请求超过一定时间没有返回时再发送一个相同的请求，使用先返回的结果并取消另一个
+ */
+public final class HedgingCallAdapterFactory extends CallAdapter.Factory {
+    /**
+     * Create an instance which schedules the second requests on its own daemon thread.
+     */
+    public static HedgingCallAdapterFactory create() {
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1,
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, "Retrofit Hedging");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        // 先返回的请求会取消定时任务，不在队列中保留
+        scheduler.setRemoveOnCancelPolicy(true);
+        return new HedgingCallAdapterFactory(scheduler);
+    }
+
+    /**
+     * Create an instance which schedules the second requests on {@code scheduler}.
+     */
+    public static HedgingCallAdapterFactory create(ScheduledExecutorService scheduler) {
+        if (scheduler == null) throw new NullPointerException("scheduler == null");
+        return new HedgingCallAdapterFactory(scheduler);
+    }
+
+    private final ScheduledExecutorService scheduler;
+    private final AtomicLong callCount = new AtomicLong();
+    private final AtomicLong hedgeCount = new AtomicLong();
+    private final AtomicLong hedgeWinCount = new AtomicLong();
+
+    private HedgingCallAdapterFactory(ScheduledExecutorService scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    @Override
+    public CallAdapter<?, ?> get(Type returnType, Annotation[] annotations, Retrofit retrofit) {
+        Hedged hedged = null;
+        for (Annotation annotation : annotations) {
+            if (annotation instanceof Hedged) {
+                hedged = (Hedged) annotation;
+                break;
+            }
+        }
+        if (hedged == null) {
+            return null;
+        }
+        if (hedged.delayMillis() < 0) {
+            throw new IllegalArgumentException("@Hedged delayMillis must not be negative.");
+        }
+
+        @SuppressWarnings("unchecked")
+        CallAdapter<Object, ?> delegate =
+                (CallAdapter<Object, ?>) retrofit.nextCallAdapter(this, returnType, annotations);
+        // 未指定时根据该方法的耗时计算
+        LatencyTracker latencies = hedged.delayMillis() == 0 ? new LatencyTracker() : null;
+        return new HedgingCallAdapter<>(delegate, this,
+                TimeUnit.MILLISECONDS.toNanos(hedged.delayMillis()), latencies);
+    }
+
+    /**
+     * The number of hedgeable calls made, whether or not a second request was sent.
+     */
+    public long callCount() {
+        return callCount.get();
+    }
+
+    /**
+     * The number of second requests sent because the first one was slower than the delay.
+     */
+    public long hedgeCount() {
+        return hedgeCount.get();
+    }
+
+    /**
+     * The number of calls answered by the second request rather than the first.
+     */
+    public long hedgeWinCount() {
+        return hedgeWinCount.get();
+    }
+
+    ScheduledExecutorService scheduler() {
+        return scheduler;
+    }
+
+    void recordCall() {
+        callCount.incrementAndGet();
+    }
+
+    void recordHedge() {
+        hedgeCount.incrementAndGet();
+    }
+
+    void recordHedgeWin() {
+        hedgeWinCount.incrementAndGet();
+    }
+
+    private static final class HedgingCallAdapter<R, T> implements CallAdapter<R, T> {
+        private final CallAdapter<R, T> delegate;
+        private final HedgingCallAdapterFactory factory;
+        private final long delayNanos;
+        // 固定delay时为null
+        private final LatencyTracker latencies;
+
+        HedgingCallAdapter(CallAdapter<R, T> delegate, HedgingCallAdapterFactory factory,
+                           long delayNanos, LatencyTracker latencies) {
+            this.delegate = delegate;
+            this.factory = factory;
+            this.delayNanos = delayNanos;
+            this.latencies = latencies;
+        }
+
+        @Override
+        public Type responseType() {
+            return delegate.responseType();
+        }
+
+        @Override
+        public T adapt(Call<R> call) {
+            return delegate.adapt(new HedgingCall<>(call, factory, delayNanos, latencies));
+        }
+    }
+}
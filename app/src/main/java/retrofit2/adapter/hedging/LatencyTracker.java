@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2017 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package retrofit2.adapter.hedging;
+
+import java.util.Arrays;
+
+/**
+ * The latencies of the most recent successful calls of one service method, from which the
+ * hedging delay is derived. A call's latency runs from its start to its winning response, so a
+ * hedged call is measured the same way as one which was never hedged. The percentile is recomputed after every {@link #RECOMPUTE_INTERVAL} new samples
+ * rather than on every call.
+ * <p>
+ * 记录最近的调用耗时，用来计算发送第二个请求前等待的时间
+ */
+final class LatencyTracker {
+    // 保留的样本数量
+    private static final int CAPACITY = 256;
+    // 样本数量少于此值时不发送第二个请求
+    static final int MIN_SAMPLES = 20;
+    private static final int RECOMPUTE_INTERVAL = 32;
+    private static final int PERCENTILE = 95;
+
+    private final long[] samples = new long[CAPACITY];
+    private int size;
+    // 下一个样本写入的位置
+    private int next;
+    private int sinceRecompute;
+    // -1: 样本不足
+    private volatile long percentileNanos = -1;
+
+    synchronized void record(long latencyNanos) {
+        samples[next] = latencyNanos;
+        next = (next + 1) % CAPACITY;
+        if (size < CAPACITY) size++;
+        if (++sinceRecompute >= RECOMPUTE_INTERVAL
+                || (size >= MIN_SAMPLES && percentileNanos < 0)) {
+            sinceRecompute = 0;
+            long[] sorted = Arrays.copyOf(samples, size);
+            Arrays.sort(sorted);
+            percentileNanos = sorted[(size - 1) * PERCENTILE / 100];
+        }
+    }
+
+    /**
+     * Returns the 95th percentile of the recent latencies, or -1 if too few were recorded.
+     */
+    long percentileNanos() {
+        return percentileNanos;
+    }
+}
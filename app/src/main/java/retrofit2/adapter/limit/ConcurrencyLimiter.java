@@ -0,0 +1,216 @@
+/*
+ * Copyright (C) 2017 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package retrofit2.adapter.limit;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The concurrency limit of one service method. The limit grows by about one per round trip
+ * while calls succeed with a latency close to the lowest one observed, and shrinks by 10% at
+ * most once per round trip when a call times out, is throttled or fails on the server
+ * ({@code 429}, {@code 5xx}) or takes more than twice that lowest latency. Failures which never
+ * reached the upstream, such as an unknown host or a refused connection while offline, are not
+ * counted. The lowest latency is relearned
+ * every {@link #RTT_WINDOW} samples so that the limiter follows a slower upstream.
+ * <p>
+ * Calls over the limit wait in a FIFO queue for at most the configured timeout, or fail at once
+ * with {@link LimitExceededException} when the queue is full.
+ * <p>
+ * 每个方法一个：根据请求耗时和失败调整同时进行的请求数量，超出的请求排队或者直接拒绝
+ */
+public final class ConcurrencyLimiter {
+    private static final int RTT_WINDOW = 500;
+    private static final double BACKOFF_RATIO = 0.9;
+    // 超过最小耗时的倍数时认为上游已经过载
+    private static final double RTT_TOLERANCE = 2.0;
+
+    private final String endpoint;
+    private final LimitingCallAdapterFactory factory;
+    private final int minLimit;
+    private final int maxLimit;
+
+    private double limit;
+    private int inFlight;
+    private final ArrayDeque<Permit> queue = new ArrayDeque<>();
+    // 0: 还没有样本
+    private long minRttNanos;
+    private long windowMinRttNanos = Long.MAX_VALUE;
+    private int windowSamples;
+    private long lastDecreaseNanos;
+
+    ConcurrencyLimiter(String endpoint, LimitingCallAdapterFactory factory) {
+        this.endpoint = endpoint;
+        this.factory = factory;
+        this.minLimit = factory.minLimit;
+        this.maxLimit = factory.maxLimit;
+        this.limit = factory.initialLimit;
+    }
+
+    /**
+     * The HTTP method and relative URL of the service method, such as {@code GET users/{id}}.
+     */
+    public String endpoint() {
+        return endpoint;
+    }
+
+    /**
+     * The number of calls currently allowed in flight.
+     */
+    public synchronized int limit() {
+        return (int) limit;
+    }
+
+    public synchronized int inFlight() {
+        return inFlight;
+    }
+
+    /**
+     * The number of calls waiting for one in flight to finish.
+     */
+    public synchronized int queueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * Runs {@code permit} once a slot is free: at once, after waiting in the queue, or never if
+     * it is rejected. Runs on the calling thread or on the thread releasing a slot.
+     */
+    void acquire(final Permit permit) {
+        boolean run = false;
+        boolean reject = false;
+        synchronized (this) {
+            if (inFlight < (int) limit) {
+                inFlight++;
+                run = true;
+            } else if (queue.size() < factory.maxQueued) {
+                queue.add(permit);
+            } else {
+                reject = true;
+            }
+        }
+        if (run) {
+            permit.run();
+        } else if (reject) {
+            factory.recordRejection();
+            permit.reject(new LimitExceededException(
+                    endpoint + " has " + factory.maxQueued + " calls queued"));
+        } else {
+            Future<?> timeout = factory.scheduler().schedule(new Runnable() {
+                @Override
+                public void run() {
+                    if (remove(permit)) {
+                        factory.recordRejection();
+                        permit.reject(new LimitExceededException("Timed out waiting for one of "
+                                + limit() + " calls in flight to " + endpoint));
+                    }
+                }
+            }, factory.queueTimeoutNanos, TimeUnit.NANOSECONDS);
+            permit.setTimeout(timeout);
+        }
+    }
+
+    /**
+     * Removes {@code permit} from the queue. Returns false if it already left the queue.
+     */
+    synchronized boolean remove(Permit permit) {
+        return queue.remove(permit);
+    }
+
+    /**
+     * Frees the slot of a finished call and starts the queued calls which now fit.
+     *
+     * @param rttNanos how long the call took, or -1 if it was cancelled and says nothing about
+     * the upstream
+     * @param dropped true if the call timed out, or the upstream failed or asked to back off
+     */
+    void release(long rttNanos, boolean dropped) {
+        List<Permit> ready = null;
+        synchronized (this) {
+            // 按照包括这个请求在内的并发数量判断限额是否用满
+            if (rttNanos >= 0) {
+                update(rttNanos, dropped);
+            }
+            inFlight--;
+            while (inFlight < (int) limit && !queue.isEmpty()) {
+                if (ready == null) ready = new ArrayList<>();
+                ready.add(queue.poll());
+                inFlight++;
+            }
+        }
+        if (ready != null) {
+            for (Permit permit : ready) {
+                permit.cancelTimeout();
+                permit.run();
+            }
+        }
+    }
+
+    // 加性增，乘性减
+    private void update(long rttNanos, boolean dropped) {
+        if (rttNanos < windowMinRttNanos) windowMinRttNanos = rttNanos;
+        if (minRttNanos == 0 || rttNanos < minRttNanos) minRttNanos = rttNanos;
+        if (++windowSamples >= RTT_WINDOW) {
+            minRttNanos = windowMinRttNanos;
+            windowMinRttNanos = Long.MAX_VALUE;
+            windowSamples = 0;
+        }
+
+        if (dropped || rttNanos > minRttNanos * RTT_TOLERANCE) {
+            // 一个往返内的多个失败通常是同一次过载，只减一次
+            long now = System.nanoTime();
+            if (now - lastDecreaseNanos >= minRttNanos) {
+                lastDecreaseNanos = now;
+                limit = Math.max(minLimit, limit * BACKOFF_RATIO);
+            }
+        } else if (inFlight * 2 >= limit) {
+            // 只有用到一半以上的限额时才增加
+            limit = Math.min(maxLimit, limit + 1 / limit);
+        }
+    }
+
+    /**
+     * A call waiting for, or holding, a slot.
+     */
+    abstract static class Permit {
+        private Future<?> timeout;
+        private boolean timeoutCanceled;
+
+        /** Sends the call. It must {@linkplain #release release} its slot when it finishes. */
+        abstract void run();
+
+        /** Fails the call without sending it. */
+        abstract void reject(IOException e);
+
+        synchronized void setTimeout(Future<?> timeout) {
+            if (timeoutCanceled) {
+                // 在保存之前已经离开队列
+                timeout.cancel(false);
+            } else {
+                this.timeout = timeout;
+            }
+        }
+
+        synchronized void cancelTimeout() {
+            timeoutCanceled = true;
+            if (timeout != null) timeout.cancel(false);
+        }
+    }
+}
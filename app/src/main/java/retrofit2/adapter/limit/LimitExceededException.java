@@ -0,0 +1,31 @@
+/*
+ * Copyright (C) 2017 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package retrofit2.adapter.limit;
+
+import java.io.IOException;
+
+/**
+ * Thrown, or passed to {@link retrofit2.Callback#onFailure}, when a call was not sent because
+ * its service method already had as many calls in flight as its limit allows and the call could
+ * not wait for one of them to finish.
+ */
+public final class LimitExceededException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    LimitExceededException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,257 @@
+/*
+ * Copyright (C) 2017 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package retrofit2.adapter.limit;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Request;
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+
+/**
+ * Holds a slot of its method's {@link ConcurrencyLimiter} while the delegate runs and reports the
+ * round-trip time and outcome when it releases the slot. The round trip ends when the raw
+ * response arrives, so the time spent converting its body is not counted.
+ * <p>
+ * 得到限额后才执行请求，结束时把耗时和结果交给ConcurrencyLimiter
+ */
+final class LimitingCall<T> implements Call<T> {
+    private final Call<T> delegate;
+    private final ConcurrencyLimiter limiter;
+
+    private boolean executed;
+    private volatile boolean canceled;
+    // 等待或者持有限额，执行之前为null
+    private ConcurrencyLimiter.Permit permit;
+
+    LimitingCall(Call<T> delegate, ConcurrencyLimiter limiter) {
+        this.delegate = delegate;
+        this.limiter = limiter;
+    }
+
+    @Override
+    public Response<T> execute() throws IOException {
+        BlockingPermit permit = new BlockingPermit();
+        markExecuted(permit);
+        limiter.acquire(permit);
+        permit.await();
+
+        if (canceled) {
+            limiter.release(-1, false);
+            throw new IOException("Canceled");
+        }
+        long startNanos = System.nanoTime();
+        long rttNanos = -1;
+        boolean dropped = false;
+        try {
+            Response<T> response = delegate.execute();
+            rttNanos = rttNanos(response, startNanos);
+            dropped = isDropped(response);
+            return response;
+        } catch (IOException e) {
+            if (!delegate.isCanceled() && isTimeout(e)) {
+                rttNanos = System.nanoTime() - startNanos;
+                dropped = true;
+            }
+            throw e;
+        } finally {
+            limiter.release(rttNanos, dropped);
+        }
+    }
+
+    @Override
+    public void enqueue(final Callback<T> callback) {
+        if (callback == null) throw new NullPointerException("callback == null");
+        ConcurrencyLimiter.Permit permit = new ConcurrencyLimiter.Permit() {
+            @Override
+            void run() {
+                if (canceled) {
+                    limiter.release(-1, false);
+                    callback.onFailure(LimitingCall.this, new IOException("Canceled"));
+                    return;
+                }
+                final long startNanos = System.nanoTime();
+                delegate.enqueue(new Callback<T>() {
+                    @Override
+                    public void onResponse(Call<T> call, Response<T> response) {
+                        limiter.release(rttNanos(response, startNanos), isDropped(response));
+                        callback.onResponse(LimitingCall.this, response);
+                    }
+
+                    @Override
+                    public void onFailure(Call<T> call, Throwable t) {
+                        // 取消或者没有到达上游的请求不能说明上游的状态
+                        if (!delegate.isCanceled() && isTimeout(t)) {
+                            limiter.release(System.nanoTime() - startNanos, true);
+                        } else {
+                            limiter.release(-1, false);
+                        }
+                        callback.onFailure(LimitingCall.this, t);
+                    }
+                });
+            }
+
+            @Override
+            void reject(IOException e) {
+                callback.onFailure(LimitingCall.this, e);
+            }
+        };
+        markExecuted(permit);
+        limiter.acquire(permit);
+    }
+
+    /**
+     * The upstream asked for fewer requests or failed.
+     */
+    static boolean isDropped(Response<?> response) {
+        int code = response.code();
+        return code == 429 || code >= 500;
+    }
+
+    /**
+     * Returns true if {@code t} is a timeout, which suggests an overloaded upstream. Other failures,
+     * such as {@link java.net.UnknownHostException} or {@link java.net.ConnectException} while the
+     * device is offline, or a failed conversion, say nothing about its load.
+     */
+    static boolean isTimeout(Throwable t) {
+        // SocketTimeoutException和okio的超时都是InterruptedIOException；取消已经在前面排除
+        return t instanceof InterruptedIOException;
+    }
+
+    /**
+     * Returns the time from {@code startNanos} until the raw response of {@code response} arrived,
+     * or -1 if it came from OkHttp's cache and says nothing about the upstream.
+     */
+    static long rttNanos(Response<?> response, long startNanos) {
+        long elapsedNanos = System.nanoTime() - startNanos;
+        okhttp3.Response raw = response.raw();
+        if (raw.networkResponse() == null) return -1;
+        // receivedResponseAtMillis是毫秒精度的墙上时间，只用来扣除转换body的耗时；
+        // 不超过1毫秒时在误差范围内，不扣除
+        long convertingMillis = System.currentTimeMillis() - raw.receivedResponseAtMillis();
+        long convertingNanos = TimeUnit.MILLISECONDS.toNanos(convertingMillis);
+        if (convertingMillis <= 1 || convertingNanos >= elapsedNanos) return elapsedNanos;
+        return elapsedNanos - convertingNanos;
+    }
+
+    private synchronized void markExecuted(ConcurrencyLimiter.Permit permit) {
+        if (executed) throw new IllegalStateException("Already executed.");
+        executed = true;
+        this.permit = permit;
+    }
+
+    @Override
+    public synchronized boolean isExecuted() {
+        return executed;
+    }
+
+    @Override
+    public void cancel() {
+        canceled = true;
+        ConcurrencyLimiter.Permit permit;
+        synchronized (this) {
+            permit = this.permit;
+        }
+        // 还在排队时直接失败，已经执行时由delegate取消
+        if (permit != null && limiter.remove(permit)) {
+            permit.cancelTimeout();
+            permit.reject(new IOException("Canceled"));
+        }
+        delegate.cancel();
+    }
+
+    @Override
+    public boolean isCanceled() {
+        return canceled || delegate.isCanceled();
+    }
+
+    @SuppressWarnings("CloneDoesntCallSuperClone") // Performing deep clone.
+    @Override
+    public Call<T> clone() {
+        return new LimitingCall<>(delegate.clone(), limiter);
+    }
+
+    @Override
+    public Request request() {
+        return delegate.request();
+    }
+
+    /**
+     * The permit of {@link #execute()}: the calling thread waits until it runs or is rejected.
+     */
+    private final class BlockingPermit extends ConcurrencyLimiter.Permit {
+        private final CountDownLatch latch = new CountDownLatch(1);
+        private boolean granted;
+        private IOException rejection;
+
+        @Override
+        void run() {
+            synchronized (this) {
+                granted = true;
+            }
+            latch.countDown();
+        }
+
+        @Override
+        void reject(IOException e) {
+            synchronized (this) {
+                rejection = e;
+            }
+            latch.countDown();
+        }
+
+        /**
+         * Returns once the slot was granted, or throws the rejection.
+         */
+        void await() throws IOException {
+            try {
+                latch.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                if (limiter.remove(this)) {
+                    cancelTimeout();
+                } else {
+                    // 已经离开队列，马上会得到限额或者被拒绝，等待结果以免泄漏限额
+                    awaitUninterruptibly();
+                    boolean granted;
+                    synchronized (this) {
+                        granted = this.granted;
+                    }
+                    if (granted) limiter.release(-1, false);
+                }
+                throw new InterruptedIOException("Interrupted while waiting for a call slot.");
+            }
+            synchronized (this) {
+                if (rejection != null) throw rejection;
+            }
+        }
+
+        private void awaitUninterruptibly() {
+            while (true) {
+                try {
+                    latch.await();
+                    return;
+                } catch (InterruptedException ignored) {
+                    // 中断状态已经恢复，这里只等待很短的时间
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,243 @@
+/*
+ * Copyright (C) 2017 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package retrofit2.adapter.limit;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import retrofit2.Call;
+import retrofit2.CallAdapter;
+import retrofit2.Retrofit;
+import retrofit2.http.DELETE;
+import retrofit2.http.GET;
+import retrofit2.http.HEAD;
+import retrofit2.http.HTTP;
+import retrofit2.http.OPTIONS;
+import retrofit2.http.PATCH;
+import retrofit2.http.POST;
+import retrofit2.http.PUT;
+
+/**
+ * A {@linkplain CallAdapter.Factory call adapter factory} which limits how many calls of each
+ * service method are in flight at once. Each method gets its own {@link ConcurrencyLimiter},
+ * which adapts the limit to the latency and failures it observes, so a struggling upstream sees
+ * fewer requests instead of a growing backlog.
+ * <p>
+ * Calls over the limit wait in a queue for at most {@link Builder#queueTimeout}; when the queue
+ * is full, or the wait times out, the call fails with {@link LimitExceededException}.
+ * <p>
+ * Add this factory before any other call adapter factory. It delegates to the next factory able
+ * to handle the return type, so it works with {@code Call<T>} as well as other adapted types.
+ * <p>
+ * 按方法限制同时进行的请求数量，限额根据耗时和失败自动调整
+ */
+public final class LimitingCallAdapterFactory extends CallAdapter.Factory {
+    public static LimitingCallAdapterFactory create() {
+        return new Builder().build();
+    }
+
+    final int initialLimit;
+    final int minLimit;
+    final int maxLimit;
+    final int maxQueued;
+    final long queueTimeoutNanos;
+    private final ScheduledExecutorService scheduler;
+    private final List<ConcurrencyLimiter> limiters = new CopyOnWriteArrayList<>();
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    LimitingCallAdapterFactory(int initialLimit, int minLimit, int maxLimit, int maxQueued,
+                               long queueTimeoutNanos, ScheduledExecutorService scheduler) {
+        this.initialLimit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.maxQueued = maxQueued;
+        this.queueTimeoutNanos = queueTimeoutNanos;
+        this.scheduler = scheduler;
+    }
+
+    @Override
+    public CallAdapter<?, ?> get(Type returnType, Annotation[] annotations, Retrofit retrofit) {
+        @SuppressWarnings("unchecked")
+        CallAdapter<Object, ?> delegate =
+                (CallAdapter<Object, ?>) retrofit.nextCallAdapter(this, returnType, annotations);
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(endpoint(annotations), this);
+        limiters.add(limiter);
+        return new LimitingCallAdapter<>(delegate, limiter);
+    }
+
+    /**
+     * The limiters of the service methods created so far, for reporting their limits, calls in
+     * flight and queue depths.
+     */
+    public List<ConcurrencyLimiter> limiters() {
+        return Collections.unmodifiableList(limiters);
+    }
+
+    /**
+     * The number of calls failed with {@link LimitExceededException}.
+     */
+    public long rejectedCount() {
+        return rejectedCount.get();
+    }
+
+    ScheduledExecutorService scheduler() {
+        return scheduler;
+    }
+
+    void recordRejection() {
+        rejectedCount.incrementAndGet();
+    }
+
+    /**
+     * Returns the HTTP method and relative URL declared by {@code annotations}.
+     */
+    private static String endpoint(Annotation[] annotations) {
+        for (Annotation annotation : annotations) {
+            if (annotation instanceof GET) {
+                return "GET " + ((GET) annotation).value();
+            } else if (annotation instanceof POST) {
+                return "POST " + ((POST) annotation).value();
+            } else if (annotation instanceof PUT) {
+                return "PUT " + ((PUT) annotation).value();
+            } else if (annotation instanceof DELETE) {
+                return "DELETE " + ((DELETE) annotation).value();
+            } else if (annotation instanceof PATCH) {
+                return "PATCH " + ((PATCH) annotation).value();
+            } else if (annotation instanceof HEAD) {
+                return "HEAD " + ((HEAD) annotation).value();
+            } else if (annotation instanceof OPTIONS) {
+                return "OPTIONS " + ((OPTIONS) annotation).value();
+            } else if (annotation instanceof HTTP) {
+                HTTP http = (HTTP) annotation;
+                return http.method() + " " + http.path();
+            }
+        }
+        // ServiceMethod会报告缺少HTTP方法注解的错误
+        return "?";
+    }
+
+    /**
+     * Configures a {@link LimitingCallAdapterFactory}.
+     */
+    public static final class Builder {
+        private int initialLimit = 20;
+        private int minLimit = 1;
+        private int maxLimit = 200;
+        private int maxQueued = 100;
+        private long queueTimeoutNanos = TimeUnit.SECONDS.toNanos(1);
+        private ScheduledExecutorService scheduler;
+
+        /**
+         * The limit of each method before any call finished. Defaults to 20.
+         */
+        public Builder initialLimit(int initialLimit) {
+            if (initialLimit < 1) throw new IllegalArgumentException("initialLimit < 1");
+            this.initialLimit = initialLimit;
+            return this;
+        }
+
+        /**
+         * The bounds of the limit. Default to 1 and 200.
+         */
+        public Builder limitRange(int minLimit, int maxLimit) {
+            if (minLimit < 1) throw new IllegalArgumentException("minLimit < 1");
+            if (maxLimit < minLimit) throw new IllegalArgumentException("maxLimit < minLimit");
+            this.minLimit = minLimit;
+            this.maxLimit = maxLimit;
+            return this;
+        }
+
+        /**
+         * How many calls of each method may wait for a slot; 0 rejects calls over the limit at
+         * once. Defaults to 100.
+         */
+        public Builder maxQueued(int maxQueued) {
+            if (maxQueued < 0) throw new IllegalArgumentException("maxQueued < 0");
+            this.maxQueued = maxQueued;
+            return this;
+        }
+
+        /**
+         * How long a call may wait for a slot. Defaults to one second.
+         */
+        public Builder queueTimeout(long timeout, TimeUnit unit) {
+            if (timeout <= 0) throw new IllegalArgumentException("timeout <= 0");
+            if (unit == null) throw new NullPointerException("unit == null");
+            this.queueTimeoutNanos = unit.toNanos(timeout);
+            return this;
+        }
+
+        /**
+         * The executor which times out queued calls. Defaults to one daemon thread owned by the
+         * factory.
+         */
+        public Builder scheduler(ScheduledExecutorService scheduler) {
+            if (scheduler == null) throw new NullPointerException("scheduler == null");
+            this.scheduler = scheduler;
+            return this;
+        }
+
+        public LimitingCallAdapterFactory build() {
+            int initialLimit = Math.min(maxLimit, Math.max(minLimit, this.initialLimit));
+
+            ScheduledExecutorService scheduler = this.scheduler;
+            if (scheduler == null) {
+                ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1,
+                        new ThreadFactory() {
+                            @Override
+                            public Thread newThread(Runnable runnable) {
+                                Thread thread = new Thread(runnable, "Retrofit Limiter");
+                                thread.setDaemon(true);
+                                return thread;
+                            }
+                        });
+                // 得到执行的请求会取消超时任务，不在队列中保留
+                executor.setRemoveOnCancelPolicy(true);
+                scheduler = executor;
+            }
+            return new LimitingCallAdapterFactory(initialLimit, minLimit, maxLimit, maxQueued,
+                    queueTimeoutNanos, scheduler);
+        }
+    }
+
+    private static final class LimitingCallAdapter<R, T> implements CallAdapter<R, T> {
+        private final CallAdapter<R, T> delegate;
+        private final ConcurrencyLimiter limiter;
+
+        LimitingCallAdapter(CallAdapter<R, T> delegate, ConcurrencyLimiter limiter) {
+            this.delegate = delegate;
+            this.limiter = limiter;
+        }
+
+        @Override
+        public Type responseType() {
+            return delegate.responseType();
+        }
+
+        @Override
+        public T adapt(Call<R> call) {
+            return delegate.adapt(new LimitingCall<>(call, limiter));
+        }
+    }
+}
@@ -20,7 +20,9 @@ import com.google.gson.TypeAdapter;
 import com.google.gson.reflect.TypeToken;
 
 import java.lang.annotation.Annotation;
+import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
+import java.lang.reflect.WildcardType;
 
 import okhttp3.RequestBody;
 import okhttp3.ResponseBody;
@@ -49,14 +51,29 @@ public final class GsonConverterFactory extends Converter.Factory {
      * decoding from JSON (when no charset is specified by a header) will use UTF-8.
      */
     public static GsonConverterFactory create(Gson gson) {
-        return new GsonConverterFactory(gson);
+        return new GsonConverterFactory(gson, false);
     }
 
     private final Gson gson;
+    private final boolean streamingRequestBodies;
 
-    private GsonConverterFactory(Gson gson) {
+    private GsonConverterFactory(Gson gson, boolean streamingRequestBodies) {
         if (gson == null) throw new NullPointerException("gson == null");
         this.gson = gson;
+        this.streamingRequestBodies = streamingRequestBodies;
+    }
+
+    /**
+     * Return a new factory whose request bodies serialize their value lazily, straight into the
+     * network sink, instead of into a buffer when the request is created. Such bodies have no
+     * known {@linkplain RequestBody#contentLength() content length}, so they are sent chunked, and
+     * serialization errors surface as an {@link java.io.IOException} from the call rather than
+     * from building the request.
+     * <p>
+     * 请求体不再先序列化到内存中，适合很大的请求体
+     */
+    public GsonConverterFactory streamingRequestBodies() {
+        return new GsonConverterFactory(gson, true);
     }
 
     /**
@@ -70,6 +87,19 @@ public final class GsonConverterFactory extends Converter.Factory {
     @Override
     public Converter<ResponseBody, ?> responseBodyConverter(Type type, Annotation[] annotations,
                                                             Retrofit retrofit) {
+        if (TypeToken.get(type).getRawType() == JsonArrayCursor.class) {
+            // 逐个读取数组元素
+            if (!(type instanceof ParameterizedType)) {
+                throw new IllegalStateException("JsonArrayCursor must be parameterized"
+                        + " as JsonArrayCursor<Foo> or JsonArrayCursor<? extends Foo>");
+            }
+            Type elementType = ((ParameterizedType) type).getActualTypeArguments()[0];
+            if (elementType instanceof WildcardType) {
+                elementType = ((WildcardType) elementType).getUpperBounds()[0];
+            }
+            TypeAdapter<?> elementAdapter = gson.getAdapter(TypeToken.get(elementType));
+            return new GsonCursorResponseBodyConverter<>(gson, elementAdapter);
+        }
         TypeAdapter<?> adapter = gson.getAdapter(TypeToken.get(type));
         return new GsonResponseBodyConverter<>(gson, adapter);
     }
@@ -87,6 +117,6 @@ public final class GsonConverterFactory extends Converter.Factory {
     public Converter<?, RequestBody> requestBodyConverter(Type type,
                                                           Annotation[] parameterAnnotations, Annotation[] methodAnnotations, Retrofit retrofit) {
         TypeAdapter<?> adapter = gson.getAdapter(TypeToken.get(type));
-        return new GsonRequestBodyConverter<>(gson, adapter);
+        return new GsonRequestBodyConverter<>(gson, adapter, streamingRequestBodies);
     }
 }
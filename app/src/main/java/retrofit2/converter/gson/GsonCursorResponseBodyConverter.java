@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2017 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package retrofit2.converter.gson;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+
+import java.io.IOException;
+
+import okhttp3.ResponseBody;
+import retrofit2.Converter;
+
+/**
+ * Opens a {@link JsonArrayCursor} over the body instead of reading it. Only the opening bracket is
+ * consumed here; the body stays open until the cursor is exhausted or closed.
+ * <p>
+ * 不读取整个应答，只返回一个JsonArrayCursor
+ *
+ * @param <T>
+ */
+final class GsonCursorResponseBodyConverter<T>
+        implements Converter<ResponseBody, JsonArrayCursor<T>> {
+    private final Gson gson;
+    private final TypeAdapter<T> adapter;
+
+    GsonCursorResponseBodyConverter(Gson gson, TypeAdapter<T> adapter) {
+        this.gson = gson;
+        this.adapter = adapter;
+    }
+
+    @Override
+    public JsonArrayCursor<T> convert(ResponseBody value) throws IOException {
+        boolean opened = false;
+        try {
+            JsonReader jsonReader = gson.newJsonReader(GsonResponseBodyConverter.reader(value));
+            jsonReader.beginArray();
+            opened = true;
+            return new JsonArrayCursor<>(jsonReader, adapter, value);
+        } finally {
+            if (!opened) {
+                value.close();
+            }
+        }
+    }
+}
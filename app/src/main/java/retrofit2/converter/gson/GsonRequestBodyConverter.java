@@ -27,6 +27,7 @@ import java.nio.charset.Charset;
 import okhttp3.MediaType;
 import okhttp3.RequestBody;
 import okio.Buffer;
+import okio.BufferedSink;
 import retrofit2.Converter;
 
 /**
@@ -40,10 +41,13 @@ final class GsonRequestBodyConverter<T> implements Converter<T, RequestBody> {
 
     private final Gson gson;
     private final TypeAdapter<T> adapter;
+    // true: 在writeTo时直接序列化到网络的sink中
+    private final boolean streaming;
 
-    GsonRequestBodyConverter(Gson gson, TypeAdapter<T> adapter) {
+    GsonRequestBodyConverter(Gson gson, TypeAdapter<T> adapter, boolean streaming) {
         this.gson = gson;
         this.adapter = adapter;
+        this.streaming = streaming;
     }
 
     /**
@@ -55,6 +59,9 @@ final class GsonRequestBodyConverter<T> implements Converter<T, RequestBody> {
      */
     @Override
     public RequestBody convert(T value) throws IOException {
+        if (streaming) {
+            return new StreamingJsonRequestBody<>(gson, adapter, value);
+        }
         Buffer buffer = new Buffer();
         Writer writer = new OutputStreamWriter(buffer.outputStream(), UTF_8);
         JsonWriter jsonWriter = gson.newJsonWriter(writer);
@@ -62,4 +69,40 @@ final class GsonRequestBodyConverter<T> implements Converter<T, RequestBody> {
         jsonWriter.close();
         return RequestBody.create(MEDIA_TYPE, buffer.readByteString());
     }
+
+    /**
+     * Serializes its value in {@link #writeTo} directly into the sink, so the JSON is never held in
+     * memory as a whole. The length is unknown up front ({@code -1}) and the value is serialized
+     * again each time the body is written, e.g. when OkHttp retries the request.
+     */
+    private static final class StreamingJsonRequestBody<T> extends RequestBody {
+        private final Gson gson;
+        private final TypeAdapter<T> adapter;
+        private final T value;
+
+        StreamingJsonRequestBody(Gson gson, TypeAdapter<T> adapter, T value) {
+            this.gson = gson;
+            this.adapter = adapter;
+            this.value = value;
+        }
+
+        @Override
+        public MediaType contentType() {
+            return MEDIA_TYPE;
+        }
+
+        @Override
+        public void writeTo(BufferedSink sink) throws IOException {
+            Writer writer = new OutputStreamWriter(sink.outputStream(), UTF_8);
+            JsonWriter jsonWriter = gson.newJsonWriter(writer);
+            try {
+                adapter.write(jsonWriter, value);
+            } catch (RuntimeException e) {
+                // 在OkHttp的线程中只有IOException会作为请求失败返回
+                throw new IOException("Unable to serialize request body", e);
+            }
+            // 不能close，sink由OkHttp关闭
+            jsonWriter.flush();
+        }
+    }
 }
@@ -20,8 +20,12 @@ import com.google.gson.TypeAdapter;
 import com.google.gson.stream.JsonReader;
 
 import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.Charset;
 
+import okhttp3.MediaType;
 import okhttp3.ResponseBody;
+import okio.BufferedSource;
 import retrofit2.Converter;
 
 /**
@@ -30,6 +34,8 @@ import retrofit2.Converter;
  * @param <T>
  */
 final class GsonResponseBodyConverter<T> implements Converter<ResponseBody, T> {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
     private final Gson gson;
     private final TypeAdapter<T> adapter;
 
@@ -41,11 +47,32 @@ final class GsonResponseBodyConverter<T> implements Converter<ResponseBody, T> {
 
     @Override
     public T convert(ResponseBody value) throws IOException {
-        JsonReader jsonReader = gson.newJsonReader(value.charStream());
         try {
+            JsonReader jsonReader = gson.newJsonReader(reader(value));
             return adapter.read(jsonReader);
         } finally {
             value.close();
         }
     }
+
+    /**
+     * Decodes UTF-8 bodies directly from their source; other charsets, and bodies starting with a
+     * UTF-16 or UTF-32 byte order mark, go through {@link ResponseBody#charStream()}.
+     */
+    static Reader reader(ResponseBody value) throws IOException {
+        MediaType contentType = value.contentType();
+        Charset charset = contentType != null ? contentType.charset(UTF_8) : UTF_8;
+        if (!UTF_8.equals(charset)) {
+            return value.charStream();
+        }
+        BufferedSource source = value.source();
+        if (source.request(1)) {
+            byte first = source.buffer().getByte(0);
+            // UTF-16/UTF-32的BOM以0xFE、0xFF或0x00开头，交给charStream识别
+            if (first == (byte) 0xfe || first == (byte) 0xff || first == 0) {
+                return value.charStream();
+            }
+        }
+        return new Utf8SourceReader(source);
+    }
 }
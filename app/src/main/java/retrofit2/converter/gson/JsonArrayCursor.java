@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2017 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package retrofit2.converter.gson;
+
+import com.google.gson.JsonIOException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * The elements of a top-level JSON array, decoded one at a time from the still open response
+ * body. Declare it as the body type of a service method, e.g. {@code Call<JsonArrayCursor<User>>},
+ * to consume an arbitrarily large array in constant memory.
+ * <p>
+ * The body is closed once the last element has been read, or by {@link #close()}; always close a
+ * cursor which is not read to the end. Reading performs network I/O, so do it off the main thread
+ * (for example from {@link retrofit2.Call#execute()}). I/O errors are rethrown as
+ * {@link JsonIOException} because {@link Iterator} methods cannot throw {@link IOException}.
+ * <p>
+ * 逐个读取JSON数组中的元素，不需要把整个数组读入内存
+ */
+public final class JsonArrayCursor<T> implements Iterator<T>, Closeable {
+    private final JsonReader reader;
+    private final TypeAdapter<T> adapter;
+    private final Closeable body;
+    private boolean closed;
+
+    JsonArrayCursor(JsonReader reader, TypeAdapter<T> adapter, Closeable body) {
+        this.reader = reader;
+        this.adapter = adapter;
+        this.body = body;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (closed) return false;
+        try {
+            if (reader.hasNext()) return true;
+            reader.endArray();
+            close();
+            return false;
+        } catch (IOException e) {
+            throw new JsonIOException(e);
+        }
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) throw new NoSuchElementException();
+        try {
+            return adapter.read(reader);
+        } catch (IOException e) {
+            throw new JsonIOException(e);
+        }
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException("remove");
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        body.close();
+    }
+}
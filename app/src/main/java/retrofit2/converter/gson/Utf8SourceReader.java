@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2017 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package retrofit2.converter.gson;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.Reader;
+
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.ByteString;
+
+/**
+ * A {@link Reader} which decodes UTF-8 from a {@link BufferedSource} into the caller's char array.
+ * Unlike {@link okhttp3.ResponseBody#charStream()} there is no
+ * {@link java.nio.charset.CharsetDecoder} and no intermediate char buffer: bytes are taken from the
+ * source's buffer a segment at a time into a scratch array, and ASCII, which is nearly all of a
+ * JSON document, is widened to chars in a tight loop. A leading UTF-8 byte order mark is skipped.
+ * Malformed input decodes to U+FFFD, as in {@link BufferedSource#readUtf8CodePoint()}; a sequence
+ * truncated by the end of the source throws {@link EOFException}.
+ * <p>
+ * 从okio的Buffer中批量取出字节，按UTF-8解码到JsonReader的char数组，不经过CharsetDecoder
+ */
+final class Utf8SourceReader extends Reader {
+    private static final ByteString UTF_8_BOM = ByteString.decodeHex("efbbbf");
+    private static final char REPLACEMENT_CHARACTER = '\ufffd';
+
+    private final BufferedSource source;
+    private boolean started;
+    // 上次read时char数组已满，没有写入的代理对低位
+    private char pendingLowSurrogate;
+    // 已经从source中取出、还没有解码的字节在[pos, limit)
+    private final byte[] bytes = new byte[8192];
+    private int pos;
+    private int limit;
+
+    Utf8SourceReader(BufferedSource source) {
+        this.source = source;
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        if (len == 0) return 0;
+        if (!started) {
+            started = true;
+            if (source.rangeEquals(0, UTF_8_BOM)) {
+                source.skip(UTF_8_BOM.size());
+            }
+        }
+
+        int count = 0;
+        if (pendingLowSurrogate != 0) {
+            cbuf[off + count++] = pendingLowSurrogate;
+            pendingLowSurrogate = 0;
+        }
+
+        byte[] bytes = this.bytes;
+        while (count < len) {
+            if (pos == limit && !refill(count)) break;
+
+            // ASCII
+            int pos = this.pos;
+            int end = pos + Math.min(limit - pos, len - count);
+            while (pos < end && bytes[pos] >= 0) {
+                cbuf[off + count++] = (char) bytes[pos++];
+            }
+            this.pos = pos;
+            if (pos == end) continue;
+
+            int codePoint = decodeCodePoint();
+            if (codePoint == -1) {
+                // 多字节序列不完整，还需要更多的字节
+                if (!refill(count)) break;
+                continue;
+            }
+            if (codePoint < Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+                cbuf[off + count++] = (char) codePoint;
+            } else {
+                cbuf[off + count++] = Character.highSurrogate(codePoint);
+                char low = Character.lowSurrogate(codePoint);
+                if (count < len) {
+                    cbuf[off + count++] = low;
+                } else {
+                    pendingLowSurrogate = low;
+                }
+            }
+        }
+        return count > 0 ? count : -1;
+    }
+
+    /**
+     * Moves the undecoded bytes to the front of {@link #bytes} and appends bytes from the source.
+     * Blocks only if nothing was decoded yet. Returns false if no byte was added.
+     */
+    private boolean refill(int decoded) throws IOException {
+        int remaining = limit - pos;
+        if (pos > 0) {
+            System.arraycopy(bytes, pos, bytes, 0, remaining);
+            pos = 0;
+            limit = remaining;
+        }
+        Buffer buffer = source.buffer();
+        if (buffer.size() == 0) {
+            // 已经读到数据时不再阻塞等待
+            if (decoded > 0) return false;
+            if (!source.request(1)) {
+                if (remaining > 0) throw new EOFException();
+                return false;
+            }
+        }
+        // 最多取出head segment中的字节
+        int read = buffer.read(bytes, limit, bytes.length - limit);
+        if (read <= 0) return false;
+        limit += read;
+        return true;
+    }
+
+    /**
+     * Decodes the multi-byte sequence at {@link #pos}, or returns -1 without consuming anything
+     * if it is not complete yet.
+     */
+    private int decodeCodePoint() {
+        byte[] bytes = this.bytes;
+        int b0 = bytes[pos];
+        int byteCount;
+        int codePoint;
+        int min;
+        if ((b0 & 0xe0) == 0xc0) {
+            byteCount = 2;
+            codePoint = b0 & 0x1f;
+            min = 0x80;
+        } else if ((b0 & 0xf0) == 0xe0) {
+            byteCount = 3;
+            codePoint = b0 & 0x0f;
+            min = 0x800;
+        } else if ((b0 & 0xf8) == 0xf0) {
+            byteCount = 4;
+            codePoint = b0 & 0x07;
+            min = 0x10000;
+        } else {
+            // 非法的首字节
+            pos++;
+            return REPLACEMENT_CHARACTER;
+        }
+        if (limit - pos < byteCount) {
+            return -1;
+        }
+        for (int i = 1; i < byteCount; i++) {
+            int b = bytes[pos + i];
+            if ((b & 0xc0) != 0x80) {
+                // 非法的后续字节不消费，作为下一个字符的开始
+                pos += i;
+                return REPLACEMENT_CHARACTER;
+            }
+            codePoint = codePoint << 6 | (b & 0x3f);
+        }
+        pos += byteCount;
+        if (codePoint > 0x10ffff
+                || (codePoint >= 0xd800 && codePoint <= 0xdfff)
+                || codePoint < min) {
+            // 超出范围、代理对或者过长的编码
+            return REPLACEMENT_CHARACTER;
+        }
+        return codePoint;
+    }
+
+    @Override
+    public void close() throws IOException {
+        source.close();
+    }
+}
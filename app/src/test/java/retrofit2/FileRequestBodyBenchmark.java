@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2017 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package retrofit2;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.Random;
+
+import okhttp3.RequestBody;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.Okio;
+import okio.Sink;
+import okio.Timeout;
+
+/**
+ * Measures upload throughput of the built-in {@link File} and {@link FileChannel} request bodies
+ * against OkHttp's {@link RequestBody#create(okhttp3.MediaType, File)}, the previous
+ * {@link FileChannel} body, which read through {@link Channels#newInputStream}, and reading the
+ * whole file into a byte array first. Each body is written to a sink which discards its input and
+ * checks that the whole file arrived, so only the cost of getting the file into okio's segments is
+ * measured.
+ * <p>
+ * Run {@link #main}; it prints milliseconds per upload of a {@value #FILE_MIB} MiB file and the
+ * throughput for several rounds.
+ * <p>
+ * 比较几种文件请求体写入okio的吞吐量
+ */
+public final class FileRequestBodyBenchmark {
+    private static final int FILE_MIB = 64;
+    private static final int WARM_UP_ROUNDS = 5;
+    private static final int ROUNDS = 10;
+
+    public static void main(String[] args) throws IOException {
+        File file = File.createTempFile("upload", ".bin");
+        file.deleteOnExit();
+        writeRandom(file);
+
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = randomAccessFile.getChannel();
+            for (int round = 0; round < WARM_UP_ROUNDS; round++) {
+                runAll(file, channel, false);
+            }
+            for (int round = 0; round < ROUNDS; round++) {
+                System.out.printf("round %d:", round);
+                runAll(file, channel, true);
+                System.out.println();
+            }
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    private static void runAll(File file, FileChannel channel, boolean print) throws IOException {
+        RequestBody fileBody = BuiltInConverters.FileRequestBodyConverter.INSTANCE.convert(file);
+        report("File", upload(fileBody), print);
+        report("RequestBody.create(File)", upload(RequestBody.create(null, file)), print);
+        // 每个channel请求体都从创建时的position开始，先回到文件开头
+        channel.position(0);
+        RequestBody channelBody =
+                BuiltInConverters.FileChannelRequestBodyConverter.INSTANCE.convert(channel);
+        report("FileChannel", upload(channelBody), print);
+        channel.position(0);
+        report("Channels.newInputStream", upload(previousChannelBody(channel)), print);
+        report("byte[]", upload(RequestBody.create(null, readFully(file))), print);
+    }
+
+    private static void report(String name, double millis, boolean print) {
+        if (print) {
+            System.out.printf(" %s %.1f ms (%.0f MiB/s),", name, millis, FILE_MIB * 1000 / millis);
+        }
+    }
+
+    private static double upload(RequestBody body) throws IOException {
+        long start = System.nanoTime();
+        DiscardingSink discarding = new DiscardingSink();
+        BufferedSink sink = Okio.buffer(discarding);
+        body.writeTo(sink);
+        sink.flush();
+        double millis = (System.nanoTime() - start) / 1e6;
+        if (discarding.byteCount != FILE_MIB * 1024L * 1024L) {
+            throw new AssertionError("Uploaded " + discarding.byteCount + " bytes");
+        }
+        return millis;
+    }
+
+    /**
+     * The {@link FileChannel} body before positional reads.
+     */
+    private static RequestBody previousChannelBody(final FileChannel channel) throws IOException {
+        final long position = channel.position();
+        final long contentLength = channel.size() - position;
+        return new RequestBody() {
+            @Override
+            public okhttp3.MediaType contentType() {
+                return null;
+            }
+
+            @Override
+            public long contentLength() {
+                return contentLength;
+            }
+
+            @Override
+            public void writeTo(BufferedSink sink) throws IOException {
+                channel.position(position);
+                sink.write(Okio.source(Channels.newInputStream(channel)), contentLength);
+            }
+        };
+    }
+
+    private static byte[] readFully(File file) throws IOException {
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            byte[] bytes = new byte[(int) in.length()];
+            in.readFully(bytes);
+            return bytes;
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void writeRandom(File file) throws IOException {
+        byte[] chunk = new byte[1024 * 1024];
+        new Random(0).nextBytes(chunk);
+        BufferedSink sink = Okio.buffer(Okio.sink(file));
+        try {
+            for (int i = 0; i < FILE_MIB; i++) {
+                sink.write(chunk);
+            }
+        } finally {
+            sink.close();
+        }
+    }
+
+    // 丢弃写入的数据，segment回到池中
+    static final class DiscardingSink implements Sink {
+        long byteCount;
+
+        @Override
+        public void write(Buffer source, long byteCount) throws IOException {
+            source.skip(byteCount);
+            this.byteCount += byteCount;
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public Timeout timeout() {
+            return Timeout.NONE;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2017 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package retrofit2;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import okhttp3.Request;
+import okhttp3.ResponseBody;
+import retrofit2.http.GET;
+import retrofit2.http.Path;
+import retrofit2.http.Query;
+
+/**
+ * Measures the per-call overhead of a service proxy, without sending any request: the handler
+ * used by {@link Retrofit#create} against the one it replaced, which checked the declaring class
+ * and default methods and looked the method up in a {@code ConcurrentHashMap} on every call.
+ * <p>
+ * Run {@link #main} on a JVM (or with {@code -Djava.compiler=NONE} to see the interpreted cost);
+ * it prints the nanoseconds per call of each handler for several rounds.
+ * <p>
+ * 比较动态代理每次调用的开销
+ */
+public final class ServiceInvocationBenchmark {
+    private static final int WARM_UP_ROUNDS = 5;
+    private static final int ROUNDS = 5;
+    private static final int CALLS_PER_ROUND = 2000000;
+
+    interface Service {
+        @GET("a") Call<ResponseBody> a();
+        @GET("b") Call<ResponseBody> b();
+        @GET("c") Call<ResponseBody> c();
+        @GET("d") Call<ResponseBody> d();
+        @GET("e/{id}") Call<ResponseBody> e(@Path("id") String id);
+        @GET("f") Call<ResponseBody> f(@Query("q") String q);
+        @GET("g") Call<ResponseBody> g();
+        @GET("h") Call<ResponseBody> h();
+    }
+
+    // 防止调用被优化掉
+    static volatile Object sink;
+
+    public static void main(String[] args) {
+        Retrofit retrofit = new Retrofit.Builder()
+                .baseUrl("http://localhost/")
+                .callFactory(new okhttp3.Call.Factory() {
+                    @Override
+                    public okhttp3.Call newCall(Request request) {
+                        throw new AssertionError("No request is sent.");
+                    }
+                })
+                .build();
+        Service current = retrofit.create(Service.class);
+        Service previous = (Service) Proxy.newProxyInstance(Service.class.getClassLoader(),
+                new Class<?>[]{Service.class}, new PreviousHandler(retrofit));
+
+        for (int round = 0; round < WARM_UP_ROUNDS; round++) {
+            run(current);
+            run(previous);
+        }
+        for (int round = 0; round < ROUNDS; round++) {
+            System.out.printf("round %d: current %.1f ns/call, previous %.1f ns/call%n", round,
+                    run(current), run(previous));
+        }
+    }
+
+    /**
+     * Returns the average nanoseconds per call of {@code service}.
+     */
+    private static double run(Service service) {
+        long start = System.nanoTime();
+        for (int i = 0; i < CALLS_PER_ROUND; i++) {
+            sink = service.e("1");
+        }
+        return (System.nanoTime() - start) / (double) CALLS_PER_ROUND;
+    }
+
+    /**
+     * The invocation handler of {@link Retrofit#create} before methods were bound to invokers.
+     */
+    private static final class PreviousHandler implements InvocationHandler {
+        private final Platform platform = Platform.get();
+        private final Retrofit retrofit;
+
+        PreviousHandler(Retrofit retrofit) {
+            this.retrofit = retrofit;
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getDeclaringClass() == Object.class) {
+                return method.invoke(this, args);
+            }
+            if (platform.isDefaultMethod(method)) {
+                return platform.invokeDefaultMethod(method, Service.class, proxy, args);
+            }
+            ServiceMethod<Object, Object> serviceMethod =
+                    (ServiceMethod<Object, Object>) retrofit.loadServiceMethod(method);
+            OkHttpCall<Object> okHttpCall = new OkHttpCall<>(serviceMethod, args);
+            return serviceMethod.callAdapter.adapt(okHttpCall);
+        }
+    }
+}
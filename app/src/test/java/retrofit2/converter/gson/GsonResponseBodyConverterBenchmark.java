@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2017 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package retrofit2.converter.gson;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.reflect.TypeToken;
+
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.nio.charset.Charset;
+import java.util.List;
+
+import okhttp3.MediaType;
+import okhttp3.ResponseBody;
+import retrofit2.Converter;
+
+/**
+ * Compares {@link GsonResponseBodyConverter}, which decodes UTF-8 with {@link Utf8SourceReader},
+ * with the previous converter, which read {@link ResponseBody#charStream()}, on a JSON array of
+ * {@value #CONTRIBUTORS} contributors (about 4 MiB, one login in ten non-ASCII).
+ * <p>
+ * Run {@link #main}; it prints milliseconds per conversion and throughput for several rounds.
+ * <p>
+ * 比较直接解码UTF-8与charStream的解析速度
+ */
+public final class GsonResponseBodyConverterBenchmark {
+    private static final int CONTRIBUTORS = 100000;
+    private static final int WARM_UP_ROUNDS = 10;
+    private static final int ROUNDS = 10;
+    private static final MediaType JSON = MediaType.parse("application/json; charset=utf-8");
+
+    static final class Contributor {
+        String login;
+        Integer contributions;
+    }
+
+    // 防止结果被优化掉
+    static volatile Object sink;
+
+    public static void main(String[] args) throws IOException {
+        byte[] json = payload();
+        Gson gson = new Gson();
+        Type type = new TypeToken<List<Contributor>>() {
+        }.getType();
+        Converter<ResponseBody, ?> current = GsonConverterFactory.create(gson)
+                .responseBodyConverter(type, new Annotation[0], null);
+        @SuppressWarnings("unchecked")
+        TypeAdapter<List<Contributor>> adapter =
+                (TypeAdapter<List<Contributor>>) gson.getAdapter(TypeToken.get(type));
+
+        for (int round = 0; round < WARM_UP_ROUNDS; round++) {
+            runCurrent(current, json);
+            runPrevious(gson, adapter, json);
+        }
+        double megabytes = json.length / (1024.0 * 1024.0);
+        for (int round = 0; round < ROUNDS; round++) {
+            double currentMillis = runCurrent(current, json);
+            double previousMillis = runPrevious(gson, adapter, json);
+            System.out.printf("round %d: current %.1f ms (%.0f MiB/s), charStream %.1f ms (%.0f MiB/s)%n",
+                    round, currentMillis, megabytes * 1000 / currentMillis,
+                    previousMillis, megabytes * 1000 / previousMillis);
+        }
+    }
+
+    private static double runCurrent(Converter<ResponseBody, ?> converter, byte[] json)
+            throws IOException {
+        long start = System.nanoTime();
+        sink = converter.convert(ResponseBody.create(JSON, json));
+        return (System.nanoTime() - start) / 1e6;
+    }
+
+    /**
+     * The conversion before {@link Utf8SourceReader}.
+     */
+    private static double runPrevious(Gson gson, TypeAdapter<List<Contributor>> adapter,
+                                      byte[] json) throws IOException {
+        long start = System.nanoTime();
+        ResponseBody body = ResponseBody.create(JSON, json);
+        try {
+            sink = adapter.read(gson.newJsonReader(body.charStream()));
+        } finally {
+            body.close();
+        }
+        return (System.nanoTime() - start) / 1e6;
+    }
+
+    private static byte[] payload() {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < CONTRIBUTORS; i++) {
+            if (i > 0) json.append(',');
+            json.append("{\"login\":\"user").append(i)
+                    .append(i % 10 == 0 ? "-é中" : "")
+                    .append("\",\"contributions\":").append(i).append('}');
+        }
+        return json.append(']').toString().getBytes(Charset.forName("UTF-8"));
+    }
+}
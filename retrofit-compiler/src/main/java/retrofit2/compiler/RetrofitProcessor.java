@@ -0,0 +1,471 @@
+/*
+ * Copyright (C) 2017 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package retrofit2.compiler;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Filer;
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.PrimitiveType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+
+/**
+ * Generates a {@code retrofit2.GeneratedService} subclass for every interface with Retrofit HTTP
+ * method annotations. The method and parameter annotations are parsed and validated here, at
+ * compile time, and stored in the generated class in the text form read by
+ * {@code retrofit2.ServiceMethodSpec#decode}.
+ * <p>
+ * Interfaces which cannot be represented (for example, a method without an HTTP method
+ * annotation) are reported as a warning and skipped; {@code Retrofit.create} then falls back to a
+ * dynamic proxy which reports the same problem at runtime.
+ * <p>
+ * 编译期解析API接口中的注解，生成 XXX_RetrofitService 实现类
+ */
+public final class RetrofitProcessor extends AbstractProcessor {
+    private static final String HTTP_PACKAGE = "retrofit2.http.";
+    private static final String SUFFIX = "_RetrofitService";
+    // 与retrofit2.ServiceMethod中的正则一致
+    private static final Pattern PARAM_URL_REGEX =
+            Pattern.compile("\\{([a-zA-Z][a-zA-Z0-9_-]*)\\}");
+
+    // key 方法注解; value 是否有body
+    private static final Map<String, Boolean> HTTP_METHODS = new LinkedHashMap<>();
+    // key 参数注解; value 与retrofit2.ServiceMethodSpec中的常量一致
+    private static final Map<String, Integer> PARAMETER_KINDS = new LinkedHashMap<>();
+
+    static {
+        HTTP_METHODS.put("DELETE", false);
+        HTTP_METHODS.put("GET", false);
+        HTTP_METHODS.put("HEAD", false);
+        HTTP_METHODS.put("PATCH", true);
+        HTTP_METHODS.put("POST", true);
+        HTTP_METHODS.put("PUT", true);
+        HTTP_METHODS.put("OPTIONS", false);
+
+        String[] kinds = {"Url", "Path", "Query", "QueryName", "QueryMap", "Header", "HeaderMap",
+                "Field", "FieldMap", "Part", "PartMap", "Body"};
+        for (int i = 0; i < kinds.length; i++) {
+            PARAMETER_KINDS.put(kinds[i], i);
+        }
+    }
+
+    private Elements elements;
+    private Types types;
+    private Messager messager;
+    private Filer filer;
+
+    @Override
+    public synchronized void init(ProcessingEnvironment processingEnv) {
+        super.init(processingEnv);
+        elements = processingEnv.getElementUtils();
+        types = processingEnv.getTypeUtils();
+        messager = processingEnv.getMessager();
+        filer = processingEnv.getFiler();
+    }
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        Set<String> types = new LinkedHashSet<>();
+        for (String httpMethod : HTTP_METHODS.keySet()) {
+            types.add(HTTP_PACKAGE + httpMethod);
+        }
+        types.add(HTTP_PACKAGE + "HTTP");
+        return types;
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        // 找到所有包含HTTP方法注解的接口
+        Set<TypeElement> services = new LinkedHashSet<>();
+        for (TypeElement annotation : annotations) {
+            for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+                Element enclosing = element.getEnclosingElement();
+                if (element.getKind() == ElementKind.METHOD
+                        && enclosing.getKind() == ElementKind.INTERFACE) {
+                    services.add((TypeElement) enclosing);
+                }
+            }
+        }
+
+        for (TypeElement service : services) {
+            try {
+                writeService(service);
+            } catch (InvalidServiceException e) {
+                messager.printMessage(Diagnostic.Kind.WARNING, e.getMessage()
+                        + " No implementation generated, a dynamic proxy will be used.", e.element);
+            } catch (IOException e) {
+                messager.printMessage(Diagnostic.Kind.ERROR,
+                        "Unable to write implementation of " + service + ": " + e.getMessage(), service);
+            }
+        }
+        // 不消费这些注解
+        return false;
+    }
+
+    private void writeService(TypeElement service) throws InvalidServiceException, IOException {
+        if (!service.getTypeParameters().isEmpty() || !service.getInterfaces().isEmpty()) {
+            throw new InvalidServiceException(service,
+                    "API interfaces must not have type parameters or extend other interfaces.");
+        }
+        for (Element e = service; e instanceof TypeElement; e = e.getEnclosingElement()) {
+            if (e.getModifiers().contains(Modifier.PRIVATE)) {
+                throw new InvalidServiceException(service, "API interface is not accessible.");
+            }
+        }
+
+        List<ExecutableElement> methods = new ArrayList<>();
+        for (ExecutableElement method : ElementFilter.methodsIn(service.getEnclosedElements())) {
+            // 跳过static和default方法
+            if (!method.getModifiers().contains(Modifier.ABSTRACT)) continue;
+            if (!method.getTypeParameters().isEmpty()) {
+                throw new InvalidServiceException(method, "Method must not have type parameters.");
+            }
+            if (method.getReturnType().getKind() == TypeKind.VOID) {
+                throw new InvalidServiceException(method, "Service methods cannot return void.");
+            }
+            methods.add(method);
+        }
+
+        PackageElement packageElement = elements.getPackageOf(service);
+        String packageName = packageElement.getQualifiedName().toString();
+        String binaryName = elements.getBinaryName(service).toString();
+        String simpleName = (packageName.isEmpty()
+                ? binaryName
+                : binaryName.substring(packageName.length() + 1)).replace('$', '_') + SUFFIX;
+        String serviceName = service.getQualifiedName().toString();
+
+        StringBuilder out = new StringBuilder();
+        out.append("// Generated by retrofit-compiler. Do not modify!\n");
+        if (!packageName.isEmpty()) {
+            out.append("package ").append(packageName).append(";\n\n");
+        }
+        out.append("public final class ").append(simpleName)
+                .append(" extends retrofit2.GeneratedService implements ").append(serviceName)
+                .append(" {\n");
+
+        out.append("    private static final String[] METHOD_NAMES = {\n");
+        for (ExecutableElement method : methods) {
+            out.append("            \"").append(method.getSimpleName()).append("\",\n");
+        }
+        out.append("    };\n");
+
+        out.append("    private static final Class<?>[][] PARAMETER_TYPES = {\n");
+        for (ExecutableElement method : methods) {
+            out.append("            {");
+            List<? extends VariableElement> parameters = method.getParameters();
+            for (int i = 0; i < parameters.size(); i++) {
+                if (i > 0) out.append(", ");
+                out.append(types.erasure(parameters.get(i).asType())).append(".class");
+            }
+            out.append("},\n");
+        }
+        out.append("    };\n");
+
+        out.append("    private static final String[] SPECS = {\n");
+        for (ExecutableElement method : methods) {
+            out.append("            ").append(stringLiteral(methodSpec(method))).append(",\n");
+        }
+        out.append("    };\n\n");
+
+        out.append("    public ").append(simpleName).append("(retrofit2.Retrofit retrofit) {\n")
+                .append("        super(retrofit, ").append(serviceName)
+                .append(".class, METHOD_NAMES, PARAMETER_TYPES, SPECS);\n")
+                .append("    }\n");
+
+        for (int index = 0; index < methods.size(); index++) {
+            ExecutableElement method = methods.get(index);
+            TypeMirror returnType = method.getReturnType();
+            String resultType = returnType.getKind().isPrimitive()
+                    ? types.boxedClass((PrimitiveType) returnType).getQualifiedName().toString()
+                    : returnType.toString();
+
+            out.append("\n    @Override\n    public ").append(returnType).append(' ')
+                    .append(method.getSimpleName()).append('(');
+            List<? extends VariableElement> parameters = method.getParameters();
+            for (int i = 0; i < parameters.size(); i++) {
+                if (i > 0) out.append(", ");
+                String type = parameters.get(i).asType().toString();
+                if (method.isVarArgs() && i == parameters.size() - 1 && type.endsWith("[]")) {
+                    type = type.substring(0, type.length() - 2) + "...";
+                }
+                out.append(type).append(' ').append(parameters.get(i).getSimpleName());
+            }
+            // 显式创建数组：唯一的参数是引用类型数组时，不能让它被当作varargs数组
+            out.append(") {\n        return this.<").append(resultType).append(">invoke(")
+                    .append(index).append(", new Object[] {");
+            for (int i = 0; i < parameters.size(); i++) {
+                if (i > 0) out.append(", ");
+                out.append(parameters.get(i).getSimpleName());
+            }
+            out.append("});\n    }\n");
+        }
+        out.append("}\n");
+
+        String qualifiedName = packageName.isEmpty() ? simpleName : packageName + "." + simpleName;
+        Writer writer = filer.createSourceFile(qualifiedName, service).openWriter();
+        try {
+            writer.write(out.toString());
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Parses the annotations of {@code method} the same way as {@code ServiceMethod.Builder} and
+     * returns them in the text form of {@code ServiceMethodSpec}.
+     */
+    private String methodSpec(ExecutableElement method) throws InvalidServiceException {
+        String httpMethod = null;
+        String relativeUrl = "";
+        boolean hasBody = false;
+        boolean isFormEncoded = false;
+        boolean isMultipart = false;
+        String contentType = "";
+        List<String> headers = new ArrayList<>();
+
+        for (AnnotationMirror mirror : method.getAnnotationMirrors()) {
+            String name = annotationName(mirror);
+            if (!name.startsWith(HTTP_PACKAGE)) continue;
+            name = name.substring(HTTP_PACKAGE.length());
+            Map<String, AnnotationValue> values = annotationValues(mirror);
+
+            String methodValue = null;
+            String path = null;
+            boolean body = false;
+            if (HTTP_METHODS.containsKey(name)) {
+                methodValue = name;
+                path = (String) values.get("value").getValue();
+                body = HTTP_METHODS.get(name);
+            } else if ("HTTP".equals(name)) {
+                methodValue = (String) values.get("method").getValue();
+                path = (String) values.get("path").getValue();
+                body = (Boolean) values.get("hasBody").getValue();
+            } else if ("Headers".equals(name)) {
+                List<?> headerValues = (List<?>) values.get("value").getValue();
+                if (headerValues.isEmpty()) {
+                    throw new InvalidServiceException(method, "@Headers annotation is empty.");
+                }
+                for (Object headerValue : headerValues) {
+                    String header = (String) ((AnnotationValue) headerValue).getValue();
+                    int colon = header.indexOf(':');
+                    if (colon == -1 || colon == 0 || colon == header.length() - 1) {
+                        throw new InvalidServiceException(method, "@Headers value must be in the form "
+                                + "\"Name: Value\". Found: \"" + header + "\"");
+                    }
+                    String headerName = header.substring(0, colon);
+                    String value = header.substring(colon + 1).trim();
+                    if (!isValidHeader(headerName, false) || !isValidHeader(value, true)) {
+                        throw new InvalidServiceException(method,
+                                "Unexpected character in @Headers value: \"" + header + "\"");
+                    }
+                    if ("Content-Type".equalsIgnoreCase(headerName)) {
+                        contentType = value;
+                    } else {
+                        headers.add(headerName);
+                        headers.add(value);
+                    }
+                }
+            } else if ("Multipart".equals(name)) {
+                if (isFormEncoded) {
+                    throw new InvalidServiceException(method, "Only one encoding annotation is allowed.");
+                }
+                isMultipart = true;
+            } else if ("FormUrlEncoded".equals(name)) {
+                if (isMultipart) {
+                    throw new InvalidServiceException(method, "Only one encoding annotation is allowed.");
+                }
+                isFormEncoded = true;
+            }
+
+            if (methodValue != null) {
+                if (httpMethod != null) {
+                    throw new InvalidServiceException(method, "Only one HTTP method is allowed. Found: "
+                            + httpMethod + " and " + methodValue + ".");
+                }
+                httpMethod = methodValue;
+                hasBody = body;
+                int question = path.indexOf('?');
+                if (question != -1 && question < path.length() - 1
+                        && PARAM_URL_REGEX.matcher(path.substring(question + 1)).find()) {
+                    throw new InvalidServiceException(method, "URL query string \""
+                            + path.substring(question + 1) + "\" must not have replace block. "
+                            + "For dynamic query parameters use @Query.");
+                }
+                relativeUrl = path;
+            }
+        }
+
+        if (httpMethod == null) {
+            throw new InvalidServiceException(method,
+                    "HTTP method annotation is required (e.g., @GET, @POST, etc.).");
+        }
+        if (!hasBody && (isMultipart || isFormEncoded)) {
+            throw new InvalidServiceException(method, (isMultipart ? "Multipart" : "FormUrlEncoded")
+                    + " can only be specified on HTTP methods with request body (e.g., @POST).");
+        }
+
+        List<String> tokens = new ArrayList<>();
+        tokens.add(httpMethod);
+        tokens.add((hasBody ? "B" : "") + (isFormEncoded ? "F" : "") + (isMultipart ? "M" : ""));
+        tokens.add(relativeUrl);
+        tokens.add(contentType);
+        tokens.add(String.valueOf(headers.size() / 2));
+        tokens.addAll(headers);
+        tokens.add(String.valueOf(method.getParameters().size()));
+        for (VariableElement parameter : method.getParameters()) {
+            parameterSpec(parameter, tokens);
+        }
+
+        StringBuilder spec = new StringBuilder();
+        for (int i = 0; i < tokens.size(); i++) {
+            String token = tokens.get(i);
+            if (token.indexOf('\n') != -1) {
+                throw new InvalidServiceException(method, "Values must not contain a line break.");
+            }
+            if (i > 0) spec.append('\n');
+            spec.append(token);
+        }
+        return spec.toString();
+    }
+
+    /**
+     * Appends kind, name, encoded and encoding of the single Retrofit annotation on
+     * {@code parameter}.
+     */
+    private void parameterSpec(VariableElement parameter, List<String> tokens)
+            throws InvalidServiceException {
+        AnnotationMirror found = null;
+        for (AnnotationMirror mirror : parameter.getAnnotationMirrors()) {
+            String name = annotationName(mirror);
+            if (!name.startsWith(HTTP_PACKAGE)
+                    || !PARAMETER_KINDS.containsKey(name.substring(HTTP_PACKAGE.length()))) {
+                continue;
+            }
+            if (found != null) {
+                throw new InvalidServiceException(parameter,
+                        "Multiple Retrofit annotations found, only one allowed.");
+            }
+            found = mirror;
+        }
+        if (found == null) {
+            throw new InvalidServiceException(parameter, "No Retrofit annotation found.");
+        }
+
+        Map<String, AnnotationValue> values = annotationValues(found);
+        String kind = annotationName(found).substring(HTTP_PACKAGE.length());
+        boolean hasName = "Path".equals(kind) || "Query".equals(kind) || "Header".equals(kind)
+                || "Field".equals(kind) || "Part".equals(kind);
+        AnnotationValue encoded = values.get("encoded");
+        AnnotationValue encoding = values.get("encoding");
+
+        tokens.add(String.valueOf(PARAMETER_KINDS.get(kind)));
+        tokens.add(hasName ? (String) values.get("value").getValue() : "");
+        tokens.add(encoded != null && (Boolean) encoded.getValue() ? "1" : "0");
+        tokens.add(encoding != null ? (String) encoding.getValue() : "");
+    }
+
+    private static String annotationName(AnnotationMirror mirror) {
+        return ((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName().toString();
+    }
+
+    private Map<String, AnnotationValue> annotationValues(AnnotationMirror mirror) {
+        Map<String, AnnotationValue> result = new LinkedHashMap<>();
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry
+                : elements.getElementValuesWithDefaults(mirror).entrySet()) {
+            result.put(entry.getKey().getSimpleName().toString(), entry.getValue());
+        }
+        return result;
+    }
+
+    /**
+     * The same characters as accepted by OkHttp's {@code Headers.Builder}.
+     */
+    private static boolean isValidHeader(String s, boolean allowTab) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if ((c <= '\u001f' && !(allowTab && c == '\t')) || c >= '\u007f') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String stringLiteral(String value) {
+        StringBuilder out = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                out.append('\\').append(c);
+            } else if (c == '\n') {
+                out.append("\\n");
+            } else if (c == '\r') {
+                out.append("\\r");
+            } else if (c == '\t') {
+                out.append("\\t");
+            } else if (c < 0x20) {
+                // 不能用unicode转义：javac在词法分析之前就把它还原成字符，回车会截断字符串
+                out.append(String.format("\\%03o", (int) c));
+            } else if (c >= 0x7f) {
+                out.append(String.format("\\u%04x", (int) c));
+            } else {
+                out.append(c);
+            }
+        }
+        return out.append('"').toString();
+    }
+
+    private static final class InvalidServiceException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        final Element element;
+
+        InvalidServiceException(Element element, String message) {
+            super(message);
+            this.element = element;
+        }
+    }
+}